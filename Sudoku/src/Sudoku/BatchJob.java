@@ -0,0 +1,449 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Solves a large corpus of puzzles in parallel, and can be killed and
+ * restarted without losing or repeating work.
+ *
+ * The input has one puzzle per line in any SudokuCodec format (usually the
+ * 81 character compact form). It is cut into partitions at line boundaries,
+ * and each partition is solved on its own thread, appending one line per
+ * puzzle to its own output file in the work directory:
+ *
+ * input offset, solved/unsolved/bad, solution, guesses, nanoseconds, percent
+ * complete before solving (tab separated)
+ *
+ * Every few puzzles a worker flushes its output to disk and then appends a
+ * checkpoint (input offset reached, output length) to the job journal. On
+ * restart the journal gives the partition plan and the last checkpoint of
+ * each partition; output written after that checkpoint is cut off and the
+ * puzzles after it are solved again, so every puzzle ends up in the output
+ * exactly once.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+public class BatchJob {
+
+	private static final String JOURNAL = "job.journal";
+
+	private final Path input;
+	private final Path workDirectory;
+	private final int partitions;
+	private final int checkpointEvery;
+	private final SolverRouter router = new SolverRouter();
+
+	private final AtomicLong solved = new AtomicLong();
+	private final AtomicLong processed = new AtomicLong();
+
+	/**
+	 * @param input
+	 *            - puzzle file, one puzzle per line
+	 * @param workDirectory
+	 *            - where output and journal go
+	 * @param partitions
+	 *            - how many pieces to cut a new job into; ignored when
+	 *            resuming
+	 * @param checkpointEvery
+	 *            - puzzles between checkpoints
+	 */
+	public BatchJob(Path input, Path workDirectory, int partitions, int checkpointEvery) {
+		if (partitions < 1 || checkpointEvery < 1) {
+			throw new IllegalArgumentException("Need at least one partition and one puzzle per checkpoint");
+		}
+		this.input = input;
+		this.workDirectory = workDirectory;
+		this.partitions = partitions;
+		this.checkpointEvery = checkpointEvery;
+	}
+
+	/**
+	 * Run (or resume) the job until every partition is done. If a partition
+	 * fails or the caller is interrupted, the other partitions checkpoint and
+	 * stop, and the job can be resumed later.
+	 *
+	 * @param executor
+	 *            - runs one task per unfinished partition
+	 * @return puzzles solved by this run, not counting earlier runs
+	 */
+	public long run(ExecutorService executor) throws IOException, InterruptedException {
+		Files.createDirectories(workDirectory);
+		final Journal journal = Journal.open(workDirectory.resolve(JOURNAL), input, partitions);
+		// Tells the other workers to checkpoint and stop once one has failed.
+		final AtomicBoolean stop = new AtomicBoolean();
+		try {
+			List<Future<Void>> workers = new ArrayList<>();
+			for (int partition = 0; partition < journal.partition_count(); partition++) {
+				if (!journal.is_done(partition)) {
+					final int which = partition;
+					workers.add(executor.submit(() -> {
+						solve_partition(journal, which, stop);
+						return null;
+					}));
+				}
+			}
+			// Wait for every worker, also after a failure or an interrupt, so
+			// none of them is still writing when the journal closes.
+			Exception failure = null;
+			for (Future<Void> worker : workers) {
+				while (true) {
+					try {
+						worker.get();
+						break;
+					} catch (ExecutionException e) {
+						if (failure == null) {
+							failure = new IOException("Partition failed", e.getCause());
+						}
+						stop.set(true);
+						break;
+					} catch (InterruptedException e) {
+						if (failure == null) {
+							failure = e;
+						}
+						stop.set(true);
+					}
+				}
+			}
+			if (failure instanceof InterruptedException) {
+				throw (InterruptedException) failure;
+			}
+			if (failure != null) {
+				throw (IOException) failure;
+			}
+		} finally {
+			journal.close();
+		}
+		return solved.get();
+	}
+
+	/**
+	 * @return puzzles read by this run, solved or not
+	 */
+	public long get_processed() {
+		return processed.get();
+	}
+
+	/**
+	 * @return the output file of a partition
+	 */
+	public Path output_path(int partition) {
+		return workDirectory.resolve(String.format("part-%05d.tsv", partition));
+	}
+
+	private void solve_partition(Journal journal, int partition, AtomicBoolean stop) throws IOException {
+		long offset = journal.input_offset(partition);
+		long end = journal.partition_end(partition);
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(output_path(partition), StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE)) {
+			// Drop anything written after the last checkpoint.
+			out.truncate(journal.output_length(partition));
+			out.position(journal.output_length(partition));
+			in.position(offset);
+			InputStream reader = new BufferedInputStream(Channels.newInputStream(in), 1 << 16);
+			OutputStream writer = new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16);
+
+			byte[] line = new byte[1024];
+			int[] values = new int[81];
+			StringBuilder result = new StringBuilder(160);
+			int sinceCheckpoint = 0;
+			while (offset < end) {
+				if (stop.get()) {
+					writer.flush();
+					out.force(false);
+					journal.checkpoint(partition, offset, out.position());
+					return;
+				}
+				// Read one line.
+				int length = 0;
+				long lineStart = offset;
+				int next;
+				while ((next = reader.read()) >= 0) {
+					offset++;
+					if (next == '\n') {
+						break;
+					}
+					if (length == line.length) {
+						line = Arrays.copyOf(line, length * 2);
+					}
+					line[length++] = (byte) next;
+				}
+				if (next < 0) {
+					offset = end;
+				}
+
+				int cells = SudokuCodec.decode(line, 0, length, values);
+				if (cells == 0) {
+					// Blank line.
+					continue;
+				}
+				result.setLength(0);
+				result.append(lineStart).append('\t');
+				if (cells != 81) {
+					result.append("bad\t-\t0\t0\t0");
+				} else {
+					solve(values, result);
+				}
+				result.append('\n');
+				writer.write(result.toString().getBytes(StandardCharsets.US_ASCII));
+				processed.incrementAndGet();
+
+				if (++sinceCheckpoint == checkpointEvery) {
+					writer.flush();
+					out.force(false);
+					journal.checkpoint(partition, offset, out.position());
+					sinceCheckpoint = 0;
+				}
+			}
+			writer.flush();
+			out.force(false);
+			journal.checkpoint(partition, end, out.position());
+			journal.finish(partition);
+		}
+	}
+
+	/**
+	 * Solve one puzzle and append status, solution and stats.
+	 */
+	private void solve(int[] values, StringBuilder result) {
+		Sudoku sudoku = new Sudoku(values);
+		double percentComplete = sudoku.percentComplete();
+		long start = System.nanoTime();
+		boolean ok = router.solve(sudoku);
+		long nanos = System.nanoTime() - start;
+		if (ok) {
+			solved.incrementAndGet();
+			result.append("solved\t");
+			SudokuCodec.encode(sudoku.get_values(), SudokuCodec.Format.COMPACT, result);
+		} else {
+			result.append("unsolved\t-");
+		}
+		result.append('\t').append(sudoku.get_guess_count()).append('\t').append(nanos).append('\t')
+				.append(percentComplete);
+	}
+
+	/**
+	 * Append-only text journal of the job:
+	 *
+	 * plan inputSize inputModified start0 start1 ... startN (partition i
+	 * covers start i to start i+1; inputModified is the input's last
+	 * modified time in milliseconds)
+	 *
+	 * mark partition inputOffset outputLength
+	 *
+	 * done partition
+	 *
+	 * Only lines ending in a newline count, so a line torn by a crash is
+	 * ignored. On open the journal is compacted to the plan and the latest
+	 * state of each partition. A job whose input no longer has the size and
+	 * modified time in its plan is not resumed, since its offsets would point
+	 * at different puzzles.
+	 */
+	private static final class Journal {
+		private final Path path;
+		private final long inputSize;
+		private final long inputModified;
+		private final long[] starts;
+		private final long[] inputOffsets;
+		private final long[] outputLengths;
+		private final boolean[] done;
+		// Open for appending once the journal has been compacted.
+		private FileChannel channel;
+
+		private Journal(Path path, long inputSize, long inputModified, long[] starts) {
+			this.path = path;
+			this.inputSize = inputSize;
+			this.inputModified = inputModified;
+			this.starts = starts;
+			int count = starts.length - 1;
+			this.inputOffsets = new long[count];
+			this.outputLengths = new long[count];
+			this.done = new boolean[count];
+			for (int partition = 0; partition < count; partition++) {
+				inputOffsets[partition] = starts[partition];
+			}
+		}
+
+		static Journal open(Path path, Path input, int partitions) throws IOException {
+			long inputSize = Files.size(input);
+			long inputModified = Files.getLastModifiedTime(input).toMillis();
+			Journal state = Files.exists(path) ? read(path) : null;
+			if (state == null) {
+				state = new Journal(path, inputSize, inputModified, plan(input, inputSize, partitions));
+			} else if (state.inputSize != inputSize || state.inputModified != inputModified) {
+				throw new IOException("Input " + input + " changed since the job in " + path.getParent()
+						+ " started; use a new work directory");
+			}
+			// Rewrite compacted, then keep appending to it.
+			Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+			StringBuilder text = new StringBuilder("plan ");
+			text.append(state.inputSize).append(' ').append(state.inputModified);
+			for (long start : state.starts) {
+				text.append(' ').append(start);
+			}
+			text.append('\n');
+			for (int partition = 0; partition < state.done.length; partition++) {
+				text.append("mark ").append(partition).append(' ').append(state.inputOffsets[partition]).append(' ')
+						.append(state.outputLengths[partition]).append('\n');
+				if (state.done[partition]) {
+					text.append("done ").append(partition).append('\n');
+				}
+			}
+			try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				out.write(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII)));
+				out.force(true);
+			}
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			state.channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			return state;
+		}
+
+		/**
+		 * @return the state recorded in an existing journal, or null if it
+		 *         has no plan
+		 */
+		private static Journal read(Path path) throws IOException {
+			String text = new String(Files.readAllBytes(path), StandardCharsets.US_ASCII);
+			// Only whole lines count.
+			text = text.substring(0, text.lastIndexOf('\n') + 1);
+			Journal state = null;
+			for (String line : text.split("\n")) {
+				String[] fields = line.trim().split(" ");
+				if (fields[0].equals("plan")) {
+					long[] starts = new long[fields.length - 3];
+					for (int index = 0; index < starts.length; index++) {
+						starts[index] = Long.parseLong(fields[index + 3]);
+					}
+					state = new Journal(path, Long.parseLong(fields[1]), Long.parseLong(fields[2]), starts);
+				} else if (state != null && fields[0].equals("mark")) {
+					int partition = Integer.parseInt(fields[1]);
+					state.inputOffsets[partition] = Long.parseLong(fields[2]);
+					state.outputLengths[partition] = Long.parseLong(fields[3]);
+				} else if (state != null && fields[0].equals("done")) {
+					state.done[Integer.parseInt(fields[1])] = true;
+				}
+			}
+			return state;
+		}
+
+		/**
+		 * Cut the input into pieces of about equal size, each starting at the
+		 * beginning of a line.
+		 */
+		private static long[] plan(Path input, long size, int partitions) throws IOException {
+			try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+				long[] starts = new long[partitions + 1];
+				starts[partitions] = size;
+				ByteBuffer one = ByteBuffer.allocate(1);
+				for (int partition = 1; partition < partitions; partition++) {
+					long position = Math.max(starts[partition - 1], size * partition / partitions);
+					// Move past the end of the line we landed in.
+					while (position > 0 && position < size) {
+						one.clear();
+						channel.read(one, position - 1);
+						if (one.get(0) == '\n') {
+							break;
+						}
+						position++;
+					}
+					starts[partition] = position;
+				}
+				return starts;
+			}
+		}
+
+		int partition_count() {
+			return done.length;
+		}
+
+		synchronized boolean is_done(int partition) {
+			return done[partition];
+		}
+
+		synchronized long input_offset(int partition) {
+			return inputOffsets[partition];
+		}
+
+		synchronized long output_length(int partition) {
+			return outputLengths[partition];
+		}
+
+		long partition_end(int partition) {
+			return starts[partition + 1];
+		}
+
+		synchronized void checkpoint(int partition, long inputOffset, long outputLength) throws IOException {
+			inputOffsets[partition] = inputOffset;
+			outputLengths[partition] = outputLength;
+			append("mark " + partition + " " + inputOffset + " " + outputLength + "\n");
+		}
+
+		synchronized void finish(int partition) throws IOException {
+			done[partition] = true;
+			append("done " + partition + "\n");
+		}
+
+		private void append(String line) throws IOException {
+			ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII));
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			channel.force(false);
+		}
+
+		synchronized void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Run a job from the command line:
+	 *
+	 * BatchJob input-file work-directory [partitions] [threads]
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: BatchJob input-file work-directory [partitions] [threads]");
+			return;
+		}
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		int partitions = args.length > 2 ? Integer.parseInt(args[2]) : threads;
+		BatchJob job = new BatchJob(Paths.get(args[0]), Paths.get(args[1]), partitions, 1000);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			long start = System.nanoTime();
+			long solved = job.run(executor);
+			System.out.println(job.get_processed() + " puzzles read, " + solved + " solved in "
+					+ (System.nanoTime() - start) / 1000000 + " ms");
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
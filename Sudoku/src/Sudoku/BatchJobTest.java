@@ -0,0 +1,194 @@
+package Sudoku;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class BatchJobTest {
+
+	private final Path directory;
+	private final Path input;
+	private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+	public BatchJobTest() throws IOException {
+		directory = Files.createTempDirectory("batch");
+		input = directory.resolve("puzzles.txt");
+	}
+
+	@After
+	public void After() throws IOException {
+		executor.shutdownNow();
+		try (Stream<Path> files = Files.walk(directory)) {
+			List<Path> paths = new ArrayList<>();
+			files.forEach(paths::add);
+			Collections.reverse(paths);
+			for (Path path : paths) {
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+
+	/**
+	 * Write a corpus of the sample puzzles in compact form, with a blank and
+	 * a broken line thrown in.
+	 *
+	 * @return number of puzzle lines, the broken one included
+	 */
+	private int write_corpus() throws Exception {
+		String[] files = { "Sudoku1.txt", "Sudoku2.txt", "Sudoku3.txt", "Sudoku4.txt" };
+		StringBuilder text = new StringBuilder();
+		int lines = 0;
+		for (int copy = 0; copy < 10; copy++) {
+			for (String file : files) {
+				text.append(SudokuCodec.encode(new Sudoku(file).get_values(), SudokuCodec.Format.COMPACT))
+						.append('\n');
+				lines++;
+			}
+		}
+		text.append('\n').append("12345\n");
+		lines++;
+		Files.write(input, text.toString().getBytes(StandardCharsets.US_ASCII));
+		return lines;
+	}
+
+	/**
+	 * @return every output line of the job, partition by partition, without
+	 *         the timing column
+	 */
+	private List<String> read_output(BatchJob job, int partitions) throws IOException {
+		List<String> lines = new ArrayList<>();
+		for (int partition = 0; partition < partitions; partition++) {
+			for (String line : Files.readAllLines(job.output_path(partition))) {
+				String[] fields = line.split("\t");
+				lines.add(fields[0] + " " + fields[1] + " " + fields[2] + " " + fields[3]);
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Make sure a job solves every line once and a second run has nothing
+	 * left to do.
+	 */
+	@Test
+	public void test_run() throws Exception {
+		int lines = write_corpus();
+		BatchJob job = new BatchJob(input, directory.resolve("work"), 3, 4);
+		assertEquals(lines - 1, job.run(executor));
+		assertEquals(lines, job.get_processed());
+
+		List<String> output = read_output(job, 3);
+		assertEquals(lines, output.size());
+		int bad = 0;
+		for (String line : output) {
+			String[] fields = line.split(" ");
+			if (fields[1].equals("bad")) {
+				bad++;
+				continue;
+			}
+			assertEquals("solved", fields[1]);
+			Sudoku solved = SudokuCodec.decode(fields[2]);
+			assertTrue(solved.verify());
+		}
+		assertEquals(1, bad);
+
+		BatchJob again = new BatchJob(input, directory.resolve("work"), 3, 4);
+		assertEquals(0, again.run(executor));
+		assertEquals(output, read_output(again, 3));
+	}
+
+	/**
+	 * Make sure a job killed partway resumes from its checkpoints: output
+	 * written after a checkpoint is dropped, and a torn journal line is
+	 * ignored.
+	 */
+	@Test
+	public void test_resume() throws Exception {
+		write_corpus();
+		Path work = directory.resolve("work");
+		BatchJob job = new BatchJob(input, work, 2, 5);
+		job.run(executor);
+		List<String> expected = read_output(job, 2);
+
+		// Rewind partition 0 to its first checkpoint, as if killed right after
+		// it, leaving the lines it wrote since then in the output.
+		Path journal = work.resolve("job.journal");
+		List<String> kept = new ArrayList<>();
+		for (String line : Files.readAllLines(journal)) {
+			if (line.startsWith("plan") || line.startsWith("mark 1 ") || line.equals("done 1")) {
+				kept.add(line);
+			}
+		}
+		String firstLine = Files.readAllLines(job.output_path(0)).get(0);
+		long offset = Long.parseLong(firstLine.split("\t")[0]);
+		long fiveLines = 0;
+		for (String line : Files.readAllLines(job.output_path(0)).subList(0, 5)) {
+			fiveLines += line.length() + 1;
+		}
+		long resumeAt = offset + 5 * 82;
+		StringBuilder text = new StringBuilder();
+		for (String line : kept) {
+			text.append(line).append('\n');
+		}
+		text.append("mark 0 ").append(resumeAt).append(' ').append(fiveLines).append('\n');
+		text.append("done 0");
+		Files.write(journal, text.toString().getBytes(StandardCharsets.US_ASCII));
+		Files.write(job.output_path(0), "junk\n".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+
+		BatchJob resumed = new BatchJob(input, work, 2, 5);
+		assertTrue(resumed.run(executor) > 0);
+		assertEquals(expected, read_output(resumed, 2));
+	}
+
+	/**
+	 * Make sure a job is not resumed against an input that changed.
+	 */
+	@Test
+	public void test_input_changed() throws Exception {
+		write_corpus();
+		Path work = directory.resolve("work");
+		new BatchJob(input, work, 2, 5).run(executor);
+		Files.write(input, "\n".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+		try {
+			new BatchJob(input, work, 2, 5).run(executor);
+			fail("resumed a job on a changed input");
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * Make sure a failing partition stops the job cleanly, and that the job
+	 * finishes once the problem is fixed.
+	 */
+	@Test
+	public void test_partition_failure() throws Exception {
+		int lines = write_corpus();
+		Path work = directory.resolve("work");
+		BatchJob job = new BatchJob(input, work, 3, 2);
+		// A directory where partition 1 wants its output file.
+		Files.createDirectories(job.output_path(1));
+		try {
+			job.run(executor);
+			fail("partition 1 cannot write");
+		} catch (IOException e) {
+		}
+		Files.delete(job.output_path(1));
+
+		BatchJob resumed = new BatchJob(input, work, 3, 2);
+		resumed.run(executor);
+		assertEquals(lines, read_output(resumed, 3).size());
+	}
+}
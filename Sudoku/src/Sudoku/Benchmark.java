@@ -0,0 +1,258 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+import java.nio.ByteBuffer;
+import java.util.Scanner;
+
+/**
+ * Rough timings of hot paths against the code they replaced. Run with the
+ * puzzles folder reachable (from the project directory, like Main).
+ *
+ * Each case is warmed up first so the JIT has compiled it, then timed over
+ * many iterations; the printed number is nanoseconds per call. A checksum of
+ * the results is printed too so the work cannot be optimized away.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+public class Benchmark {
+
+	private static final int WARMUP = 200000;
+	private static final int ITERATIONS = 1000000;
+
+	// Keeps results alive.
+	private static long sink;
+
+	/**
+	 * A case to time; returns something derived from its work.
+	 */
+	private interface Case {
+		long run();
+	}
+
+	public static void main(String[] args) throws Exception {
+		codec();
+		topology();
+	}
+
+	/**
+	 * Encoding and decoding a puzzle, old paths against SudokuCodec.
+	 */
+	private static void codec() throws Exception {
+		final Sudoku sudoku = new Sudoku("Sudoku4.txt");
+		final int[] values = sudoku.get_values();
+		final String pretty = sudoku.toString();
+		final String compact = SudokuCodec.encode(values, SudokuCodec.Format.COMPACT);
+		final byte[] bytes = new byte[SudokuCodec.Format.PRETTY.length()];
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(SudokuCodec.Format.PRETTY.length());
+		final int[] into = new int[81];
+
+		System.out.println("codec");
+		time("  toString, String +=", () -> legacy_to_string(sudoku).length());
+		time("  toString, codec", () -> sudoku.toString().length());
+		time("  pretty into byte[]", () -> SudokuCodec.encode(values, SudokuCodec.Format.PRETTY, bytes, 0));
+		time("  json into ByteBuffer", () -> {
+			buffer.clear();
+			SudokuCodec.encode(values, SudokuCodec.Format.JSON, buffer);
+			return buffer.position();
+		});
+		time("  parse pretty, Scanner", () -> legacy_parse(pretty)[80]);
+		time("  parse pretty, codec", () -> SudokuCodec.decode(pretty, into));
+		time("  parse compact, codec", () -> SudokuCodec.decode(compact, into));
+		time("  parse pretty bytes, codec", () -> SudokuCodec.decode(bytes, 0, bytes.length, into));
+	}
+
+	/**
+	 * Geometry worked out with division and remainders, as the solvers used
+	 * to, against walks over the Topology tables.
+	 */
+	private static void topology() throws Exception {
+		final Sudoku sudoku = new Sudoku("Sudoku1.txt");
+		final int[] values = sudoku.get_values();
+		final Topology board = Topology.NINE;
+		// Digits used per unit: rows, then columns, then boxes.
+		final int[] used = new int[27];
+		for (int cell = 0; cell < 81; cell++) {
+			if (values[cell] != 0) {
+				used[board.row[cell]] |= 1 << values[cell];
+				used[9 + board.column[cell]] |= 1 << values[cell];
+				used[18 + board.box[cell]] |= 1 << values[cell];
+			}
+		}
+
+		System.out.println("topology");
+		time("  candidates, div/mod", () -> {
+			long sum = 0;
+			for (int cell = 0; cell < 81; cell++) {
+				int row = cell / 9;
+				int column = cell % 9;
+				int box = (3 * (row / 3)) + (column / 3);
+				sum += ~(used[row] | used[9 + column] | used[18 + box]) & 0x3FE;
+			}
+			return sum;
+		});
+		time("  candidates, tables", () -> {
+			long sum = 0;
+			for (int cell = 0; cell < 81; cell++) {
+				sum += ~(used[board.row[cell]] | used[9 + board.column[cell]] | used[18 + board.box[cell]]) & 0x3FE;
+			}
+			return sum;
+		});
+		time("  peer sweep, nested loops", () -> legacy_peer_digits(values), WARMUP / 10, ITERATIONS / 10);
+		time("  peer sweep, peer table", () -> {
+			long sum = 0;
+			for (int cell = 0; cell < 81; cell++) {
+				int seen = 0;
+				int start = cell * board.peerCount;
+				for (int index = start; index < start + board.peerCount; index++) {
+					seen |= 1 << values[board.peers[index]];
+				}
+				sum += seen;
+			}
+			return sum;
+		}, WARMUP / 10, ITERATIONS / 10);
+		// Both walk the 81 cells with the same digits; the first is the old
+		// is_valid(), which counted the row, column and box in turn.
+		time("  is_valid, unit counts", () -> {
+			long sum = 0;
+			for (int cell = 0; cell < 81; cell++) {
+				sum += legacy_is_valid(values, cell, 1 + cell % 9) ? 1 : 0;
+			}
+			return sum;
+		}, WARMUP / 10, ITERATIONS / 10);
+		time("  is_valid, peer table", () -> {
+			long sum = 0;
+			for (int cell = 0; cell < 81; cell++) {
+				sum += sudoku.is_valid(cell, 1 + cell % 9) ? 1 : 0;
+			}
+			return sum;
+		}, WARMUP / 10, ITERATIONS / 10);
+	}
+
+	/**
+	 * For each cell, the digits in its row, column and box, found by looping
+	 * over them the way the prune methods used to.
+	 */
+	private static long legacy_peer_digits(int[] values) {
+		long sum = 0;
+		for (int cell = 0; cell < 81; cell++) {
+			int row = cell / 9;
+			int column = cell % 9;
+			int box = (3 * (row / 3)) + (column / 3);
+			int rowStart = 3 * (box / 3);
+			int colStart = 3 * (box % 3);
+			int seen = 0;
+			for (int other = 0; other < 9; other++) {
+				seen |= 1 << values[row * 9 + other];
+				seen |= 1 << values[other * 9 + column];
+			}
+			for (int currentRow = rowStart; currentRow < rowStart + 3; currentRow++) {
+				for (int currentCol = colStart; currentCol < colStart + 3; currentCol++) {
+					seen |= 1 << values[(9 * currentRow) + currentCol];
+				}
+			}
+			sum += seen & ~(1 << values[cell]);
+		}
+		return sum;
+	}
+
+	/**
+	 * The is_valid() and valid_for_* methods before the Topology tables: a
+	 * full count of the row, then the column, then the box, stopping after
+	 * the first unit that has the value.
+	 */
+	private static boolean legacy_is_valid(int[] puzzle, int position, int value) {
+		int row = position / 9;
+		int column = position % 9;
+		int box = (3 * (row / 3)) + (column / 3);
+		int count = 0;
+		for (int currentColumn = 0; currentColumn < 9; currentColumn++) {
+			if (puzzle[9 * row + currentColumn] == value) {
+				count++;
+			}
+		}
+		if (count != 0) {
+			return false;
+		}
+		for (int currentRow = 0; currentRow < 9; currentRow++) {
+			if (puzzle[column + 9 * currentRow] == value) {
+				count++;
+			}
+		}
+		if (count != 0) {
+			return false;
+		}
+		int rowStart = 3 * (box / 3);
+		int colStart = 3 * (box % 3);
+		for (int currentRow = rowStart; currentRow < rowStart + 3; currentRow++) {
+			for (int currentCol = colStart; currentCol < colStart + 3; currentCol++) {
+				if (puzzle[(9 * currentRow) + currentCol] == value) {
+					count++;
+				}
+			}
+		}
+		return count == 0;
+	}
+
+	/**
+	 * The toString() this class used to have.
+	 */
+	private static String legacy_to_string(Sudoku sudoku) {
+		String puzzleString = "";
+		int[][] puzzle = sudoku.get_puzzle();
+		for (int row = 0; row < 9; row++) {
+			if (row % 3 == 0) {
+				puzzleString += "---------------------\n";
+			}
+			for (int column = 0; column < 9; column++) {
+				if (column % 3 == 0) {
+					puzzleString += "|";
+				}
+				puzzleString += puzzle[row][column] + " ";
+				if (column == 8) {
+					puzzleString += "|";
+				}
+			}
+			puzzleString += "\n";
+		}
+		puzzleString += "---------------------\n";
+		return puzzleString;
+	}
+
+	/**
+	 * The Scanner based parsing the file constructor used to do. The pretty
+	 * grid is passed through with its bars and dashes blanked, like a puzzle
+	 * file.
+	 */
+	private static int[] legacy_parse(String text) {
+		int[] puzzle = new int[81];
+		Scanner scanner = new Scanner(text.replace('|', ' ').replace('-', ' '));
+		int index = 0;
+		while (scanner.hasNextInt() && index < 81) {
+			puzzle[index++] = scanner.nextInt();
+		}
+		scanner.close();
+		return puzzle;
+	}
+
+	/**
+	 * Time one case and print nanoseconds per call.
+	 */
+	private static void time(String name, Case work) {
+		time(name, work, WARMUP, ITERATIONS);
+	}
+
+	private static void time(String name, Case work, int warmup, int iterations) {
+		for (int index = 0; index < warmup; index++) {
+			sink += work.run();
+		}
+		long start = System.nanoTime();
+		for (int index = 0; index < iterations; index++) {
+			sink += work.run();
+		}
+		double perCall = (double) (System.nanoTime() - start) / iterations;
+		System.out.println(String.format("%-32s %10.1f ns   (checksum %d)", name, perCall, sink));
+	}
+}
@@ -0,0 +1,639 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Small conflict driven clause learning (CDCL) SAT solver, used as the
+ * backend for puzzles that are too big or too hard for the recursive solver.
+ * See SudokuCnf for how a puzzle becomes clauses.
+ *
+ * It follows the usual MiniSat design:
+ *
+ * 1) unit propagation with two watched literals per clause
+ *
+ * 2) on conflict, learn a first-UIP clause and jump back to the level where
+ * it becomes unit
+ *
+ * 3) pick decision variables by activity (VSIDS), with saved phases
+ *
+ * 4) restart on a Luby schedule and periodically drop the less useful half
+ * of the learned clauses
+ *
+ * Variables are numbered from 1 like DIMACS. Internally a literal is 2 * (var
+ * - 1) for the positive and 2 * (var - 1) + 1 for the negative literal.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+public class CdclSolver {
+
+	/**
+	 * Outcome of solve().
+	 */
+	public enum Result {
+		SATISFIABLE, UNSATISFIABLE, UNKNOWN
+	}
+
+	// Conflicts between restarts, scaled by the Luby sequence.
+	private static final int RESTART_BASE = 100;
+	private static final double VARIABLE_DECAY = 0.95;
+	private static final double CLAUSE_DECAY = 0.999;
+
+	private final int variableCount;
+	// All clauses by id, null once deleted. Watched literals are kept at
+	// index 0 and 1.
+	private final ArrayList<int[]> clauses = new ArrayList<>();
+	// Ids of learned clauses and their activities.
+	private final ArrayList<Integer> learned = new ArrayList<>();
+	private double[] clauseActivity = new double[1024];
+	private double clauseIncrement = 1;
+	// Clause ids watching each literal.
+	private final int[][] watches;
+	private final int[] watchCount;
+
+	// Per variable: 1 true, -1 false, 0 unassigned.
+	private final byte[] value;
+	private final int[] level;
+	// Clause that forced the variable, -1 for decisions.
+	private final int[] reason;
+	// Last value the variable had, reused when deciding it again.
+	private final byte[] phase;
+	private final double[] activity;
+	private double activityIncrement = 1;
+	private final VariableHeap heap;
+
+	// Assigned literals in order, and where each decision level starts.
+	private final int[] trail;
+	private int trailSize = 0;
+	private int[] trailLimits = new int[64];
+	private int decisionLevel = 0;
+	private int propagateHead = 0;
+
+	// Scratch space for conflict analysis.
+	private final boolean[] seen;
+
+	// Set when an empty clause was added.
+	private boolean inconsistent = false;
+
+	private long conflicts = 0;
+	private long decisions = 0;
+	private long propagations = 0;
+	private long restarts = 0;
+
+	/**
+	 * @param variableCount
+	 *            - number of variables, numbered 1 to variableCount
+	 */
+	public CdclSolver(int variableCount) {
+		this.variableCount = variableCount;
+		this.watches = new int[2 * variableCount][];
+		this.watchCount = new int[2 * variableCount];
+		for (int literal = 0; literal < watches.length; literal++) {
+			watches[literal] = new int[4];
+		}
+		this.value = new byte[variableCount];
+		this.level = new int[variableCount];
+		this.reason = new int[variableCount];
+		this.phase = new byte[variableCount];
+		this.activity = new double[variableCount];
+		this.trail = new int[variableCount];
+		this.seen = new boolean[variableCount];
+		Arrays.fill(phase, (byte) -1);
+		this.heap = new VariableHeap();
+		for (int variable = 0; variable < variableCount; variable++) {
+			heap.insert(variable);
+		}
+	}
+
+	/**
+	 * Add a clause. Must be called before solve().
+	 *
+	 * @param dimacsLiterals
+	 *            - literals as DIMACS numbers, e.g. {1, -3} for (x1 or not x3)
+	 */
+	public void add_clause(int... dimacsLiterals) {
+		if (inconsistent) {
+			return;
+		}
+		int[] literals = new int[dimacsLiterals.length];
+		int size = 0;
+		for (int index = 0; index < dimacsLiterals.length; index++) {
+			int dimacs = dimacsLiterals[index];
+			int variable = Math.abs(dimacs) - 1;
+			if (dimacs == 0 || variable >= variableCount) {
+				throw new IllegalArgumentException("Bad literal " + dimacs);
+			}
+			int literal = 2 * variable + (dimacs < 0 ? 1 : 0);
+			int current = literal_value(literal);
+			if (current > 0) {
+				// Already satisfied at level 0.
+				return;
+			}
+			if (current < 0) {
+				continue;
+			}
+			boolean duplicate = false;
+			for (int other = 0; other < size; other++) {
+				if (literals[other] == literal) {
+					duplicate = true;
+				} else if (literals[other] == (literal ^ 1)) {
+					// Tautology.
+					return;
+				}
+			}
+			if (!duplicate) {
+				literals[size++] = literal;
+			}
+		}
+
+		if (size == 0) {
+			inconsistent = true;
+		} else if (size == 1) {
+			enqueue(literals[0], -1);
+			if (propagate() >= 0) {
+				inconsistent = true;
+			}
+		} else {
+			attach(Arrays.copyOf(literals, size));
+		}
+	}
+
+	/**
+	 * Search for a satisfying assignment.
+	 *
+	 * @param conflictLimit
+	 *            - give up with UNKNOWN after this many conflicts
+	 * @return the outcome; the search also stops with UNKNOWN if the thread is
+	 *         interrupted
+	 */
+	public Result solve(long conflictLimit) {
+		if (inconsistent) {
+			return Result.UNSATISFIABLE;
+		}
+		long stopAt = conflicts + conflictLimit;
+		int maxLearned = Math.max(2000, clauses.size() / 3);
+		int restartIndex = 0;
+		long restartAt = conflicts + RESTART_BASE * luby(restartIndex);
+
+		while (true) {
+			int conflict = propagate();
+			if (conflict >= 0) {
+				conflicts++;
+				if (decisionLevel == 0) {
+					inconsistent = true;
+					return Result.UNSATISFIABLE;
+				}
+				learn(conflict);
+				decay();
+				if (conflicts >= stopAt
+						|| ((conflicts & 0xFF) == 0 && Thread.currentThread().isInterrupted())) {
+					backtrack(0);
+					return Result.UNKNOWN;
+				}
+			} else {
+				if (conflicts >= restartAt) {
+					restarts++;
+					restartIndex++;
+					restartAt = conflicts + RESTART_BASE * luby(restartIndex);
+					backtrack(0);
+				}
+				if (learned.size() - trailSize >= maxLearned) {
+					reduce_learned();
+					maxLearned += maxLearned / 10;
+				}
+				int next = pick_branch_variable();
+				if (next < 0) {
+					return Result.SATISFIABLE;
+				}
+				decisions++;
+				new_decision_level();
+				enqueue(2 * next + (phase[next] > 0 ? 0 : 1), -1);
+			}
+		}
+	}
+
+	/**
+	 * @param variable
+	 *            - DIMACS variable number
+	 * @return its value in the satisfying assignment found by solve()
+	 */
+	public boolean model_value(int variable) {
+		return value[variable - 1] > 0;
+	}
+
+	/**
+	 * @return the assignment found by solve(), indexed by variable - 1
+	 */
+	public boolean[] get_model() {
+		boolean[] model = new boolean[variableCount];
+		for (int variable = 0; variable < variableCount; variable++) {
+			model[variable] = value[variable] > 0;
+		}
+		return model;
+	}
+
+	/**
+	 * @return number of variables
+	 */
+	public int get_variable_count() {
+		return variableCount;
+	}
+
+	/**
+	 * @return conflicts hit so far
+	 */
+	public long get_conflicts() {
+		return conflicts;
+	}
+
+	/**
+	 * @return branching decisions made so far
+	 */
+	public long get_decisions() {
+		return decisions;
+	}
+
+	/**
+	 * @return literals propagated so far
+	 */
+	public long get_propagations() {
+		return propagations;
+	}
+
+	/**
+	 * @return restarts so far
+	 */
+	public long get_restarts() {
+		return restarts;
+	}
+
+	@Override
+	public String toString() {
+		return "cdcl: " + variableCount + " vars, " + clauses.size() + " clauses, " + conflicts + " conflicts, "
+				+ decisions + " decisions, " + propagations + " propagations, " + restarts + " restarts, "
+				+ learned.size() + " learned";
+	}
+
+	/**
+	 * @return 1 if the literal is true, -1 if false, 0 if unassigned
+	 */
+	private int literal_value(int literal) {
+		int current = value[literal >>> 1];
+		return (literal & 1) == 0 ? current : -current;
+	}
+
+	private int attach(int[] literals) {
+		int id = clauses.size();
+		clauses.add(literals);
+		watch(literals[0], id);
+		watch(literals[1], id);
+		return id;
+	}
+
+	private void watch(int literal, int id) {
+		if (watchCount[literal] == watches[literal].length) {
+			watches[literal] = Arrays.copyOf(watches[literal], watches[literal].length * 2);
+		}
+		watches[literal][watchCount[literal]++] = id;
+	}
+
+	private void enqueue(int literal, int from) {
+		int variable = literal >>> 1;
+		value[variable] = (byte) ((literal & 1) == 0 ? 1 : -1);
+		level[variable] = decisionLevel;
+		reason[variable] = from;
+		trail[trailSize++] = literal;
+	}
+
+	private void new_decision_level() {
+		if (decisionLevel == trailLimits.length) {
+			trailLimits = Arrays.copyOf(trailLimits, trailLimits.length * 2);
+		}
+		trailLimits[decisionLevel++] = trailSize;
+	}
+
+	/**
+	 * Propagate every literal on the trail that has not been propagated yet.
+	 *
+	 * @return id of a conflicting clause, or -1
+	 */
+	private int propagate() {
+		while (propagateHead < trailSize) {
+			int falseLiteral = trail[propagateHead++] ^ 1;
+			propagations++;
+			int[] watching = watches[falseLiteral];
+			int count = watchCount[falseLiteral];
+			int kept = 0;
+			int index = 0;
+			while (index < count) {
+				int id = watching[index++];
+				int[] clause = clauses.get(id);
+				// Make sure the false literal is at position 1.
+				if (clause[0] == falseLiteral) {
+					clause[0] = clause[1];
+					clause[1] = falseLiteral;
+				}
+				if (literal_value(clause[0]) > 0) {
+					watching[kept++] = id;
+					continue;
+				}
+				// Look for another literal to watch.
+				boolean moved = false;
+				for (int other = 2; other < clause.length; other++) {
+					if (literal_value(clause[other]) >= 0) {
+						clause[1] = clause[other];
+						clause[other] = falseLiteral;
+						watch(clause[1], id);
+						moved = true;
+						break;
+					}
+				}
+				if (moved) {
+					continue;
+				}
+				watching[kept++] = id;
+				if (literal_value(clause[0]) < 0) {
+					// Conflict: keep the rest of the watches and stop.
+					while (index < count) {
+						watching[kept++] = watching[index++];
+					}
+					watchCount[falseLiteral] = kept;
+					propagateHead = trailSize;
+					return id;
+				}
+				enqueue(clause[0], id);
+			}
+			watchCount[falseLiteral] = kept;
+		}
+		return -1;
+	}
+
+	/**
+	 * Derive the first-UIP clause from a conflict, jump back and assert it.
+	 */
+	private void learn(int conflict) {
+		int[] learnt = new int[decisionLevel + 8];
+		// Slot 0 is for the asserting literal.
+		int size = 1;
+		int pathCount = 0;
+		int literal = -1;
+		int index = trailSize - 1;
+		int id = conflict;
+
+		do {
+			int[] clause = clauses.get(id);
+			if (is_learned(id)) {
+				bump_clause(id);
+			}
+			for (int position = (literal == -1 ? 0 : 1); position < clause.length; position++) {
+				int other = clause[position];
+				int variable = other >>> 1;
+				if (!seen[variable] && level[variable] > 0) {
+					seen[variable] = true;
+					bump_variable(variable);
+					if (level[variable] == decisionLevel) {
+						pathCount++;
+					} else {
+						if (size == learnt.length) {
+							learnt = Arrays.copyOf(learnt, size * 2);
+						}
+						learnt[size++] = other;
+					}
+				}
+			}
+			// Walk back to the next marked literal on the trail.
+			while (!seen[trail[index] >>> 1]) {
+				index--;
+			}
+			literal = trail[index--];
+			id = reason[literal >>> 1];
+			seen[literal >>> 1] = false;
+			// Reason clauses keep the literal they implied at index 0, which
+			// the next pass skips.
+			pathCount--;
+		} while (pathCount > 0);
+		learnt[0] = literal ^ 1;
+
+		// Find the level to jump back to and put that literal at slot 1.
+		int backLevel = 0;
+		for (int position = 1; position < size; position++) {
+			seen[learnt[position] >>> 1] = false;
+			if (level[learnt[position] >>> 1] > backLevel) {
+				backLevel = level[learnt[position] >>> 1];
+				int swap = learnt[1];
+				learnt[1] = learnt[position];
+				learnt[position] = swap;
+			}
+		}
+
+		backtrack(backLevel);
+		if (size == 1) {
+			enqueue(learnt[0], -1);
+		} else {
+			int newId = attach(Arrays.copyOf(learnt, size));
+			learned.add(newId);
+			bump_clause(newId);
+			enqueue(learnt[0], newId);
+		}
+	}
+
+	private boolean is_learned(int id) {
+		return id < clauseActivity.length && clauseActivity[id] > 0;
+	}
+
+	private void backtrack(int target) {
+		if (decisionLevel <= target) {
+			return;
+		}
+		for (int index = trailSize - 1; index >= trailLimits[target]; index--) {
+			int variable = trail[index] >>> 1;
+			phase[variable] = value[variable];
+			value[variable] = 0;
+			reason[variable] = -1;
+			if (!heap.contains(variable)) {
+				heap.insert(variable);
+			}
+		}
+		trailSize = trailLimits[target];
+		propagateHead = trailSize;
+		decisionLevel = target;
+	}
+
+	private int pick_branch_variable() {
+		while (!heap.is_empty()) {
+			int variable = heap.remove_max();
+			if (value[variable] == 0) {
+				return variable;
+			}
+		}
+		return -1;
+	}
+
+	private void bump_variable(int variable) {
+		activity[variable] += activityIncrement;
+		if (activity[variable] > 1e100) {
+			for (int other = 0; other < variableCount; other++) {
+				activity[other] *= 1e-100;
+			}
+			activityIncrement *= 1e-100;
+		}
+		if (heap.contains(variable)) {
+			heap.increased(variable);
+		}
+	}
+
+	private void bump_clause(int id) {
+		if (id >= clauseActivity.length) {
+			clauseActivity = Arrays.copyOf(clauseActivity, Math.max(id + 1, clauseActivity.length * 2));
+		}
+		clauseActivity[id] += clauseIncrement;
+		if (clauseActivity[id] > 1e20) {
+			for (int index = 0; index < learned.size(); index++) {
+				clauseActivity[learned.get(index)] *= 1e-20;
+			}
+			clauseIncrement *= 1e-20;
+		}
+	}
+
+	private void decay() {
+		activityIncrement /= VARIABLE_DECAY;
+		clauseIncrement /= CLAUSE_DECAY;
+	}
+
+	/**
+	 * Drop the least active half of the learned clauses, keeping binary
+	 * clauses and clauses that are the reason for a current assignment.
+	 */
+	private void reduce_learned() {
+		Integer[] order = learned.toArray(new Integer[0]);
+		Arrays.sort(order, (first, second) -> Double.compare(clauseActivity[first], clauseActivity[second]));
+		boolean[] locked = new boolean[clauses.size()];
+		for (int index = 0; index < trailSize; index++) {
+			int from = reason[trail[index] >>> 1];
+			if (from >= 0) {
+				locked[from] = true;
+			}
+		}
+		learned.clear();
+		for (int index = 0; index < order.length; index++) {
+			int id = order[index];
+			if (index < order.length / 2 && clauses.get(id).length > 2 && !locked[id]) {
+				clauses.set(id, null);
+				clauseActivity[id] = 0;
+			} else {
+				learned.add(id);
+			}
+		}
+		// Rebuild the watch lists without the dropped clauses.
+		Arrays.fill(watchCount, 0);
+		for (int id = 0; id < clauses.size(); id++) {
+			int[] clause = clauses.get(id);
+			if (clause != null) {
+				watch(clause[0], id);
+				watch(clause[1], id);
+			}
+		}
+	}
+
+	/**
+	 * Luby sequence 1, 1, 2, 1, 1, 2, 4, ...
+	 */
+	private static long luby(int index) {
+		int size = 1;
+		int sequence = 0;
+		while (size < index + 1) {
+			sequence++;
+			size = 2 * size + 1;
+		}
+		while (size - 1 != index) {
+			size = (size - 1) >> 1;
+			sequence--;
+			index = index % size;
+		}
+		return 1L << sequence;
+	}
+
+	/**
+	 * Binary max-heap of variables ordered by activity.
+	 */
+	private class VariableHeap {
+		private final int[] heap = new int[variableCount];
+		// Position of each variable in the heap, -1 if absent.
+		private final int[] position = new int[variableCount];
+		private int size = 0;
+
+		VariableHeap() {
+			Arrays.fill(position, -1);
+		}
+
+		boolean is_empty() {
+			return size == 0;
+		}
+
+		boolean contains(int variable) {
+			return position[variable] >= 0;
+		}
+
+		void insert(int variable) {
+			heap[size] = variable;
+			position[variable] = size;
+			sift_up(size++);
+		}
+
+		void increased(int variable) {
+			sift_up(position[variable]);
+		}
+
+		int remove_max() {
+			int top = heap[0];
+			position[top] = -1;
+			size--;
+			if (size > 0) {
+				heap[0] = heap[size];
+				position[heap[0]] = 0;
+				sift_down(0);
+			}
+			return top;
+		}
+
+		private void sift_up(int index) {
+			int variable = heap[index];
+			while (index > 0) {
+				int parent = (index - 1) >> 1;
+				if (activity[heap[parent]] >= activity[variable]) {
+					break;
+				}
+				heap[index] = heap[parent];
+				position[heap[index]] = index;
+				index = parent;
+			}
+			heap[index] = variable;
+			position[variable] = index;
+		}
+
+		private void sift_down(int index) {
+			int variable = heap[index];
+			while (true) {
+				int child = 2 * index + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && activity[heap[child + 1]] > activity[heap[child]]) {
+					child++;
+				}
+				if (activity[heap[child]] <= activity[variable]) {
+					break;
+				}
+				heap[index] = heap[child];
+				position[heap[index]] = index;
+				index = child;
+			}
+			heap[index] = variable;
+			position[variable] = index;
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+/**
+ * Solver that treats the puzzle as an exact cover problem and runs Knuth's
+ * Algorithm X with dancing links.
+ *
+ * Each of the 729 choices (cell, digit) covers four of 324 constraints: the
+ * cell is filled, and the digit appears in its row, its column and its box.
+ * A solution picks 81 choices that cover every constraint exactly once. The
+ * search always branches on the constraint with the fewest choices left.
+ *
+ * Links are kept in flat int arrays rather than node objects.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+public class ExactCoverSolver implements SudokuEngine {
+
+	private static final int COLUMNS = 324;
+	private static final int CHOICES = 729;
+	// Root header, then one header per column, then four nodes per choice.
+	private static final int ROOT = 0;
+	private static final int NODES = 1 + COLUMNS + 4 * CHOICES;
+
+	@Override
+	public String name() {
+		return "exact-cover";
+	}
+
+	@Override
+	public int[] solve(int[] values) {
+		return new Links().solve(values);
+	}
+
+	/**
+	 * One search's worth of links.
+	 */
+	private static class Links {
+		private final int[] left = new int[NODES];
+		private final int[] right = new int[NODES];
+		private final int[] up = new int[NODES];
+		private final int[] down = new int[NODES];
+		// Column header of each node, and choice (cell * 9 + digit - 1).
+		private final int[] column = new int[NODES];
+		private final int[] choice = new int[NODES];
+		// Nodes left in each column, indexed by header.
+		private final int[] size = new int[1 + COLUMNS];
+		// Node picked at each depth of the search.
+		private final int[] picked = new int[81];
+		private final boolean[] covered = new boolean[1 + COLUMNS];
+
+		Links() {
+			for (int header = 0; header <= COLUMNS; header++) {
+				left[header] = header == 0 ? COLUMNS : header - 1;
+				right[header] = header == COLUMNS ? 0 : header + 1;
+				up[header] = header;
+				down[header] = header;
+				column[header] = header;
+			}
+			int node = 1 + COLUMNS;
+			for (int cell = 0; cell < 81; cell++) {
+				int row = Topology.NINE.row[cell];
+				int col = Topology.NINE.column[cell];
+				int box = Topology.NINE.box[cell];
+				for (int digit = 0; digit < 9; digit++) {
+					int first = node;
+					int[] headers = { 1 + cell, 1 + 81 + row * 9 + digit, 1 + 162 + col * 9 + digit,
+							1 + 243 + box * 9 + digit };
+					for (int part = 0; part < 4; part++) {
+						int header = headers[part];
+						column[node] = header;
+						choice[node] = cell * 9 + digit;
+						// Append to the bottom of the column.
+						up[node] = up[header];
+						down[node] = header;
+						down[up[header]] = node;
+						up[header] = node;
+						size[header]++;
+						// Link into the choice's ring.
+						left[node] = part == 0 ? first + 3 : node - 1;
+						right[node] = part == 3 ? first : node + 1;
+						node++;
+					}
+				}
+			}
+		}
+
+		int[] solve(int[] values) {
+			int[] grid = new int[81];
+			// Choose the givens up front.
+			for (int cell = 0; cell < 81; cell++) {
+				if (values[cell] != 0) {
+					int first = 1 + COLUMNS + 4 * (cell * 9 + values[cell] - 1);
+					for (int node = first; node < first + 4; node++) {
+						if (covered[column[node]]) {
+							// Two givens clash.
+							return null;
+						}
+					}
+					for (int node = first; node < first + 4; node++) {
+						cover(column[node]);
+					}
+					grid[cell] = values[cell];
+				}
+			}
+			if (!search(0)) {
+				return null;
+			}
+			for (int depth = 0; depth < 81; depth++) {
+				int pick = picked[depth];
+				if (pick != 0) {
+					grid[choice[pick] / 9] = choice[pick] % 9 + 1;
+				}
+			}
+			return grid;
+		}
+
+		private boolean search(int depth) {
+			if (right[ROOT] == ROOT) {
+				return true;
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				return false;
+			}
+			// Branch on the column with the fewest nodes.
+			int best = right[ROOT];
+			for (int header = right[best]; header != ROOT; header = right[header]) {
+				if (size[header] < size[best]) {
+					best = header;
+				}
+			}
+			if (size[best] == 0) {
+				return false;
+			}
+			cover(best);
+			for (int row = down[best]; row != best; row = down[row]) {
+				picked[depth] = row;
+				for (int node = right[row]; node != row; node = right[node]) {
+					cover(column[node]);
+				}
+				if (search(depth + 1)) {
+					return true;
+				}
+				for (int node = left[row]; node != row; node = left[node]) {
+					uncover(column[node]);
+				}
+			}
+			uncover(best);
+			picked[depth] = 0;
+			return false;
+		}
+
+		private void cover(int header) {
+			covered[header] = true;
+			right[left[header]] = right[header];
+			left[right[header]] = left[header];
+			for (int row = down[header]; row != header; row = down[row]) {
+				for (int node = right[row]; node != row; node = right[node]) {
+					down[up[node]] = down[node];
+					up[down[node]] = up[node];
+					size[column[node]]--;
+				}
+			}
+		}
+
+		private void uncover(int header) {
+			for (int row = up[header]; row != header; row = up[row]) {
+				for (int node = left[row]; node != row; node = left[node]) {
+					size[column[node]]++;
+					down[up[node]] = node;
+					up[down[node]] = node;
+				}
+			}
+			right[left[header]] = header;
+			left[right[header]] = header;
+			covered[header] = false;
+		}
+	}
+}
@@ -28,6 +28,16 @@ public class Main {
 				puzzle.solve_sudoku();
 				System.out.println(puzzle.get_guess_count());
 
+				// Solve test w/ nogood learning:
+				// puzzle.solve_sudoku_with_nogoods(1 << 16);
+				// System.out.println(puzzle.get_guess_count());
+				// System.out.println(puzzle.get_nogoods());
+
+				// Solve test w/ a race between all engines (needs an
+				// ExecutorService, e.g. Executors.newFixedThreadPool(4)):
+				// SolverPortfolio.with_default_engines(executor).solve(puzzle);
+				// System.out.println(puzzle.verify());
+
 				// Solve test w/ elimination:
 				// puzzle.solve_by_elimination();
 				// System.out.println(puzzle.percentComplete());
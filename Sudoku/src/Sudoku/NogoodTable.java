@@ -0,0 +1,162 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+/**
+ * Bounded table of failed sub-searches ("nogoods") for the learning
+ * recursive solver.
+ *
+ * The recursive solver fills cells in index order, so once it reaches a
+ * position everything before it is filled and everything after it is either
+ * a given or empty. Whether the rest of the puzzle can be solved then only
+ * depends on the position and on which digits are used in each row, column
+ * and box. Two different ways of filling the earlier cells that leave the
+ * same used digits lead to the same dead end, so a failure is stored under
+ * that key and later matches are cut off without searching.
+ *
+ * Keys are stored in full (4 longs), so a hit is always a real match and
+ * pruning never loses a solution. The table is direct mapped: a new entry
+ * evicts whatever was in its slot, which keeps memory fixed at 32 bytes per
+ * slot.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+public class NogoodTable {
+
+	// Longs per stored key.
+	private static final int KEY_LONGS = 4;
+	// Marks a slot as in use, so an all zero key is never confused with empty.
+	private static final long OCCUPIED = 1L << 63;
+
+	private final long[] keys;
+	private final int mask;
+	// Scratch key for the current lookup.
+	private final long[] key = new long[KEY_LONGS];
+
+	private long lookups = 0;
+	private long hits = 0;
+	private long stores = 0;
+	private long evictions = 0;
+
+	/**
+	 * @param capacity
+	 *            - maximum number of nogoods kept, rounded up to a power of
+	 *            two
+	 */
+	public NogoodTable(int capacity) {
+		if (capacity < 1 || capacity > (1 << 26)) {
+			throw new IllegalArgumentException("Capacity " + capacity);
+		}
+		int slots = Integer.highestOneBit(capacity);
+		if (slots < capacity) {
+			slots <<= 1;
+		}
+		this.keys = new long[slots * KEY_LONGS];
+		this.mask = slots - 1;
+	}
+
+	/**
+	 * Check whether the search from this position with these used digits has
+	 * already failed.
+	 */
+	boolean contains(int position, int[] rowUsed, int[] columnUsed, int[] boxUsed) {
+		lookups++;
+		int base = slot(position, rowUsed, columnUsed, boxUsed);
+		for (int index = 0; index < KEY_LONGS; index++) {
+			if (keys[base + index] != key[index]) {
+				return false;
+			}
+		}
+		hits++;
+		return true;
+	}
+
+	/**
+	 * Remember that the search from this position with these used digits
+	 * failed.
+	 */
+	void add(int position, int[] rowUsed, int[] columnUsed, int[] boxUsed) {
+		int base = slot(position, rowUsed, columnUsed, boxUsed);
+		if ((keys[base + KEY_LONGS - 1] & OCCUPIED) != 0) {
+			evictions++;
+		}
+		System.arraycopy(key, 0, keys, base, KEY_LONGS);
+		stores++;
+	}
+
+	/**
+	 * Pack the position and the 27 masks (9 bits each, 7 per long) into the
+	 * scratch key and return the offset of its slot.
+	 */
+	private int slot(int position, int[] rowUsed, int[] columnUsed, int[] boxUsed) {
+		key[0] = 0;
+		key[1] = 0;
+		key[2] = 0;
+		key[3] = OCCUPIED | ((long) position << 54);
+		for (int unit = 0; unit < 9; unit++) {
+			pack(unit, rowUsed[unit]);
+			pack(9 + unit, columnUsed[unit]);
+			pack(18 + unit, boxUsed[unit]);
+		}
+		long hash = key[0] * 0x9E3779B97F4A7C15L;
+		hash = (hash ^ key[1]) * 0x9E3779B97F4A7C15L;
+		hash = (hash ^ key[2]) * 0x9E3779B97F4A7C15L;
+		hash = (hash ^ key[3]) * 0x9E3779B97F4A7C15L;
+		return ((int) (hash >>> 32) & mask) * KEY_LONGS;
+	}
+
+	private void pack(int chunk, int used) {
+		// Digits are bits 1-9, drop the unused bit 0.
+		key[chunk / 7] |= (long) (used >>> 1) << (9 * (chunk % 7));
+	}
+
+	/**
+	 * @return how many times the solver asked about a position
+	 */
+	public long get_lookups() {
+		return lookups;
+	}
+
+	/**
+	 * @return how many branches were cut off by a stored nogood
+	 */
+	public long get_hits() {
+		return hits;
+	}
+
+	/**
+	 * @return how many nogoods were recorded
+	 */
+	public long get_stores() {
+		return stores;
+	}
+
+	/**
+	 * @return how many nogoods were overwritten by newer ones
+	 */
+	public long get_evictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return number of slots in the table
+	 */
+	public int get_capacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * @return bytes used by the stored keys
+	 */
+	public long memory_bytes() {
+		return (long) keys.length * 8;
+	}
+
+	@Override
+	public String toString() {
+		return "nogoods: " + hits + " hits / " + lookups + " lookups, " + stores + " stored, " + evictions
+				+ " evicted, " + get_capacity() + " slots (" + memory_bytes() + " bytes)";
+	}
+}
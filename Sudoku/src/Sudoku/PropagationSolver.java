@@ -0,0 +1,132 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+/**
+ * Solver that combines constraint propagation with search on the most
+ * constrained cell (minimum remaining values, MRV).
+ *
+ * Every cell keeps a mask of possible digits (bit d for digit d). Placing a
+ * digit removes it from the 20 peers, and any peer left with one digit is
+ * placed in turn, which is what solve_by_elimination does but without
+ * rebuilding sets each round. When propagation stalls, the empty cell with
+ * the fewest candidates is tried with each of them on a copy of the state.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+public class PropagationSolver implements SudokuEngine {
+
+	// Mask with the bits for digits 1-9 set.
+	private static final int ALL_DIGITS = 0x3FE;
+	// The 20 peers of each cell, see Topology.
+	private static final int[] PEERS = Topology.NINE.peers;
+	private static final int PEER_COUNT = Topology.NINE.peerCount;
+
+	@Override
+	public String name() {
+		return "propagation";
+	}
+
+	@Override
+	public int[] solve(int[] values) {
+		int[] grid = new int[81];
+		int[] candidates = new int[81];
+		for (int cell = 0; cell < 81; cell++) {
+			candidates[cell] = ALL_DIGITS;
+		}
+		for (int cell = 0; cell < 81; cell++) {
+			if (values[cell] != 0 && grid[cell] != values[cell]) {
+				if (!assign(grid, candidates, cell, values[cell])) {
+					return null;
+				}
+			}
+		}
+		return search(grid, candidates) ? grid : null;
+	}
+
+	/**
+	 * Depth first search from a propagated state.
+	 *
+	 * @return true with the solution left in grid
+	 */
+	private static boolean search(int[] grid, int[] candidates) {
+		if (Thread.currentThread().isInterrupted()) {
+			return false;
+		}
+		// Pick the empty cell with the fewest candidates.
+		int best = -1;
+		int fewest = 10;
+		for (int cell = 0; cell < 81; cell++) {
+			if (grid[cell] == 0) {
+				int count = Integer.bitCount(candidates[cell]);
+				if (count < fewest) {
+					fewest = count;
+					best = cell;
+					if (count == 2) {
+						break;
+					}
+				}
+			}
+		}
+		if (best < 0) {
+			return true;
+		}
+
+		int remaining = candidates[best];
+		while (remaining != 0) {
+			int digit = Integer.numberOfTrailingZeros(remaining);
+			remaining &= remaining - 1;
+			int[] nextGrid = grid.clone();
+			int[] nextCandidates = candidates.clone();
+			if (assign(nextGrid, nextCandidates, best, digit) && search(nextGrid, nextCandidates)) {
+				System.arraycopy(nextGrid, 0, grid, 0, 81);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Place a digit and propagate naked singles.
+	 *
+	 * @return false if this leads to a contradiction
+	 */
+	static boolean assign(int[] grid, int[] candidates, int cell, int digit) {
+		if ((candidates[cell] & (1 << digit)) == 0) {
+			return false;
+		}
+		int[] queue = new int[81];
+		int head = 0;
+		int tail = 0;
+		grid[cell] = digit;
+		candidates[cell] = 1 << digit;
+		queue[tail++] = cell;
+		while (head < tail) {
+			int placed = queue[head++];
+			int bit = 1 << grid[placed];
+			int start = placed * PEER_COUNT;
+			for (int index = start; index < start + PEER_COUNT; index++) {
+				int peer = PEERS[index];
+				if ((candidates[peer] & bit) == 0) {
+					continue;
+				}
+				if (grid[peer] != 0) {
+					// The peer already holds this digit.
+					return false;
+				}
+				int left = candidates[peer] & ~bit;
+				if (left == 0) {
+					return false;
+				}
+				candidates[peer] = left;
+				if ((left & (left - 1)) == 0) {
+					grid[peer] = Integer.numberOfTrailingZeros(left);
+					queue[tail++] = peer;
+				}
+			}
+		}
+		return true;
+	}
+}
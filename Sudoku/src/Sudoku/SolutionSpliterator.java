@@ -0,0 +1,234 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Lazily walks every solution of a puzzle, one per tryAdvance(), for use
+ * through Sudoku.solutions().
+ *
+ * The search is an explicit depth first search rather than recursion so it
+ * can stop after each solution and carry on later. Level d of the search
+ * fills cells[d], chosen when the level is entered as the empty cell with the
+ * fewest candidates; pending[d] holds the digits still to be tried there.
+ * Everything lives in a few arrays of at most 81 entries, so memory does not
+ * grow with the number of solutions.
+ *
+ * trySplit() hands the other half of the untried digits at the shallowest
+ * level that has any to a new spliterator, which searches only below that
+ * level. If there are none, forced cells are filled first, going down until a
+ * level with a choice is found. The two then cover disjoint parts of the
+ * search tree, so a parallel stream finds each solution exactly once.
+ * Solutions do not come out in a defined order.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+public class SolutionSpliterator implements Spliterator<int[]> {
+
+	// Mask with the bits for digits 1-9 set.
+	private static final int ALL_DIGITS = 0x3FE;
+
+	// Board geometry, see Topology.
+	private static final int[] ROW = Topology.NINE.row;
+	private static final int[] COLUMN = Topology.NINE.column;
+	private static final int[] BOX = Topology.NINE.box;
+
+	// Current values, 0 meaning empty.
+	private final int[] values = new int[81];
+	// Used digits (bit d for digit d) per row, column and box.
+	private final int[] rowUsed = new int[9];
+	private final int[] columnUsed = new int[9];
+	private final int[] boxUsed = new int[9];
+	// The cell filled at each level, and the digits left to try there.
+	private final int[] cells = new int[81];
+	private final int[] pending = new int[81];
+	// Number of levels, one per empty cell of the puzzle.
+	private final int count;
+	// This spliterator never backtracks above base; it is done once depth
+	// drops below it. Cells at levels below depth are filled.
+	private final int base;
+	private int depth;
+
+	/**
+	 * @param givens
+	 *            - the 81 cell values of the puzzle, 0 meaning empty
+	 */
+	public SolutionSpliterator(int[] givens) {
+		int empty = 0;
+		boolean clash = false;
+		for (int cell = 0; cell < 81; cell++) {
+			int digit = givens[cell];
+			if (digit == 0) {
+				cells[empty++] = cell;
+			} else if ((used(cell) & (1 << digit)) != 0) {
+				clash = true;
+			} else {
+				set(cell, digit);
+			}
+		}
+		this.count = empty;
+		this.base = 0;
+		// Givens that break the rules have no solutions at all.
+		this.depth = clash ? -1 : 0;
+		if (!clash && count > 0) {
+			choose(0);
+		}
+	}
+
+	/**
+	 * Split off the search below level of another spliterator, trying only
+	 * the given digits at that level.
+	 */
+	private SolutionSpliterator(SolutionSpliterator from, int level, int digits) {
+		this.count = from.count;
+		this.base = level;
+		this.depth = level;
+		System.arraycopy(from.cells, 0, cells, 0, count);
+		for (int cell = 0; cell < 81; cell++) {
+			if (from.values[cell] != 0) {
+				set(cell, from.values[cell]);
+			}
+		}
+		// Keep the givens and the levels above the split.
+		for (int index = level; index < count; index++) {
+			if (values[cells[index]] != 0) {
+				clear(cells[index]);
+			}
+		}
+		pending[level] = digits;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super int[]> action) {
+		while (depth >= base) {
+			if (depth == count) {
+				int[] solution = values.clone();
+				backtrack();
+				action.accept(solution);
+				return true;
+			}
+			int remaining = pending[depth];
+			if (remaining == 0) {
+				backtrack();
+				continue;
+			}
+			int digit = Integer.numberOfTrailingZeros(remaining);
+			pending[depth] = remaining & (remaining - 1);
+			set(cells[depth], digit);
+			depth++;
+			if (depth < count) {
+				choose(depth);
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Spliterator<int[]> trySplit() {
+		while (true) {
+			int last = Math.min(depth, count - 1);
+			for (int level = base; level <= last; level++) {
+				int remaining = pending[level];
+				int untried = Integer.bitCount(remaining);
+				// Below depth this spliterator is busy with a digit already, so
+				// it can give away everything untried; at depth it must keep
+				// one.
+				int give = level < depth ? (untried + 1) / 2 : untried / 2;
+				if (give == 0) {
+					continue;
+				}
+				int handed = 0;
+				for (int index = 0; index < give; index++) {
+					int highest = Integer.highestOneBit(remaining);
+					handed |= highest;
+					remaining &= ~highest;
+				}
+				pending[level] = remaining;
+				return new SolutionSpliterator(this, level, handed);
+			}
+			// Nothing to hand off. If the cell at depth is forced, fill it the
+			// way tryAdvance() would and look at the next level; choose() puts
+			// forced cells first, so otherwise most puzzles would not split.
+			if (depth < base || depth >= count || Integer.bitCount(pending[depth]) != 1) {
+				return null;
+			}
+			int digit = Integer.numberOfTrailingZeros(pending[depth]);
+			pending[depth] = 0;
+			set(cells[depth], digit);
+			depth++;
+			if (depth < count) {
+				choose(depth);
+			}
+		}
+	}
+
+	@Override
+	public long estimateSize() {
+		return depth < base ? 0 : Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return NONNULL | IMMUTABLE;
+	}
+
+	/**
+	 * Enter level: pick its cell by minimum remaining values and load its
+	 * candidates.
+	 */
+	private void choose(int level) {
+		int best = level;
+		int fewest = 10;
+		int bestCandidates = 0;
+		for (int index = level; index < count; index++) {
+			int candidates = ALL_DIGITS & ~used(cells[index]);
+			int size = Integer.bitCount(candidates);
+			if (size < fewest) {
+				fewest = size;
+				best = index;
+				bestCandidates = candidates;
+				if (size <= 1) {
+					break;
+				}
+			}
+		}
+		int cell = cells[best];
+		cells[best] = cells[level];
+		cells[level] = cell;
+		pending[level] = bestCandidates;
+	}
+
+	/**
+	 * Leave the current level and empty the cell of the one above it.
+	 */
+	private void backtrack() {
+		depth--;
+		if (depth >= base) {
+			clear(cells[depth]);
+		}
+	}
+
+	private int used(int cell) {
+		return rowUsed[ROW[cell]] | columnUsed[COLUMN[cell]] | boxUsed[BOX[cell]];
+	}
+
+	private void set(int cell, int digit) {
+		int bit = 1 << digit;
+		values[cell] = digit;
+		rowUsed[ROW[cell]] |= bit;
+		columnUsed[COLUMN[cell]] |= bit;
+		boxUsed[BOX[cell]] |= bit;
+	}
+
+	private void clear(int cell) {
+		int bit = ~(1 << values[cell]);
+		values[cell] = 0;
+		rowUsed[ROW[cell]] &= bit;
+		columnUsed[COLUMN[cell]] &= bit;
+		boxUsed[BOX[cell]] &= bit;
+	}
+}
@@ -0,0 +1,448 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk store of solved puzzles, so the same puzzle is only solved once
+ * across runs.
+ *
+ * A store is a directory with two files:
+ *
+ * solutions.dat - append-only log of fixed size records: the puzzle and its
+ * solution packed at half a byte per cell (SudokuCodec.pack), the guess count
+ * and solve time, and a CRC32 of the record
+ *
+ * solutions.idx - memory-mapped open addressing hash table from puzzle to
+ * record. Each 8 byte slot holds the top 24 bits of the puzzle's hash and the
+ * record number, so a lookup touches one index page and, on a tag match, one
+ * record.
+ *
+ * Records are written in full before the index points at them, and a lookup
+ * always checks the record's CRC and compares the puzzle, so readers never
+ * see half written data. Readers need no lock; writers are serialized.
+ *
+ * Crash recovery on open: a torn record at the end of the log fails its CRC
+ * and is cut off, and records the index header does not cover yet are added
+ * to the index. If anything was cut off, or the index is missing or damaged,
+ * the index is rebuilt from the log.
+ *
+ * A store can be open only once at a time: opening takes an exclusive lock
+ * on solutions.dat, held until close(), and fails if another process or
+ * another SolutionStore in this JVM holds it.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+public class SolutionStore implements Closeable {
+
+	// Record layout.
+	private static final int RECORD_MAGIC = 0x53554431;
+	private static final int PUZZLE_OFFSET = 4;
+	private static final int SOLUTION_OFFSET = PUZZLE_OFFSET + SudokuCodec.PACKED_LENGTH;
+	private static final int GUESSES_OFFSET = SOLUTION_OFFSET + SudokuCodec.PACKED_LENGTH;
+	private static final int NANOS_OFFSET = GUESSES_OFFSET + 4;
+	private static final int CRC_OFFSET = 100;
+	static final int RECORD_SIZE = 104;
+
+	// Index layout: a 64 byte header, then the slots.
+	private static final int INDEX_MAGIC = 0x53554431 + 1;
+	private static final int INDEX_VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int CAPACITY_OFFSET = 8;
+	private static final int COUNT_OFFSET = 12;
+	private static final int INDEXED_LENGTH_OFFSET = 16;
+	private static final int MIN_CAPACITY = 1024;
+	// Record numbers use the low 40 bits of a slot, hash tags the rest.
+	private static final long RECORD_MASK = (1L << 40) - 1;
+
+	/**
+	 * What the store knows about a puzzle.
+	 */
+	public static final class Entry {
+		private final int[] solution;
+		private final int guessCount;
+		private final long solveNanos;
+
+		private Entry(int[] solution, int guessCount, long solveNanos) {
+			this.solution = solution;
+			this.guessCount = guessCount;
+			this.solveNanos = solveNanos;
+		}
+
+		/**
+		 * @return the solved 81 values
+		 */
+		public int[] get_solution() {
+			return solution.clone();
+		}
+
+		/**
+		 * @return guesses the solver made the first time round
+		 */
+		public int get_guess_count() {
+			return guessCount;
+		}
+
+		/**
+		 * @return how long the first solve took
+		 */
+		public long get_solve_nanos() {
+			return solveNanos;
+		}
+	}
+
+	/**
+	 * A mapped index file. Replaced as a whole when the table grows, so
+	 * readers holding the old one can finish with it.
+	 */
+	private static final class Index {
+		final FileChannel channel;
+		final MappedByteBuffer buffer;
+		final int mask;
+
+		Index(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+			this.channel = channel;
+			this.buffer = buffer;
+			this.mask = capacity - 1;
+		}
+	}
+
+	private final Path indexPath;
+	private final FileChannel data;
+	private volatile Index index;
+	// Bytes of whole, checked records in the log.
+	private volatile long dataLength;
+	private int count;
+
+	private SolutionStore(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		this.indexPath = directory.resolve("solutions.idx");
+		this.data = FileChannel.open(directory.resolve("solutions.dat"), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			// Two writers appending at the same length would overwrite each
+			// other's records.
+			FileLock lock;
+			try {
+				lock = data.tryLock();
+			} catch (OverlappingFileLockException e) {
+				lock = null;
+			}
+			if (lock == null) {
+				throw new IOException("Solution store " + directory + " is already open");
+			}
+			recover();
+		} catch (IOException | RuntimeException e) {
+			data.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open a store, creating it if needed, and recover from any crash.
+	 */
+	public static SolutionStore open(Path directory) throws IOException {
+		return new SolutionStore(directory);
+	}
+
+	/**
+	 * @return what the store knows about the puzzle, or null
+	 */
+	public Entry get(int[] puzzle) throws IOException {
+		byte[] packed = new byte[SudokuCodec.PACKED_LENGTH];
+		SudokuCodec.pack(puzzle, packed, 0);
+		ByteBuffer record = find(index, dataLength, packed, hash(packed));
+		if (record == null) {
+			return null;
+		}
+		int[] solution = new int[81];
+		SudokuCodec.unpack(record.array(), SOLUTION_OFFSET, solution);
+		return new Entry(solution, record.getInt(GUESSES_OFFSET), record.getLong(NANOS_OFFSET));
+	}
+
+	/**
+	 * Store a solved puzzle. Nothing is written if the puzzle is already
+	 * there.
+	 *
+	 * @return true if a record was added
+	 */
+	public synchronized boolean put(int[] puzzle, int[] solution, int guessCount, long solveNanos)
+			throws IOException {
+		byte[] packed = new byte[SudokuCodec.PACKED_LENGTH];
+		SudokuCodec.pack(puzzle, packed, 0);
+		long hash = hash(packed);
+		if (find(index, dataLength, packed, hash) != null) {
+			return false;
+		}
+
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		record.putInt(0, RECORD_MAGIC);
+		System.arraycopy(packed, 0, record.array(), PUZZLE_OFFSET, packed.length);
+		SudokuCodec.pack(solution, record.array(), SOLUTION_OFFSET);
+		record.putInt(GUESSES_OFFSET, guessCount);
+		record.putLong(NANOS_OFFSET, solveNanos);
+		record.putInt(CRC_OFFSET, crc(record.array()));
+		long offset = dataLength;
+		while (record.hasRemaining()) {
+			data.write(record, offset + record.position());
+		}
+
+		if (2 * (count + 1) > index.mask + 1) {
+			// Too full; the new table is built from the log, record included.
+			dataLength = offset + RECORD_SIZE;
+			rebuild_index(2 * (index.mask + 1));
+		} else {
+			insert(index, hash, offset / RECORD_SIZE);
+			count++;
+			dataLength = offset + RECORD_SIZE;
+			write_header(index, count, dataLength);
+		}
+		return true;
+	}
+
+	/**
+	 * Force the log and then the index to disk.
+	 */
+	public synchronized void flush() throws IOException {
+		data.force(false);
+		index.buffer.force();
+	}
+
+	/**
+	 * @return number of stored puzzles
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		flush();
+		index.channel.close();
+		data.close();
+	}
+
+	/**
+	 * Look up a packed puzzle.
+	 *
+	 * @return the matching record, or null
+	 */
+	private ByteBuffer find(Index current, long length, byte[] packed, long hash) throws IOException {
+		long tag = hash >>> 40;
+		int slot = (int) hash & current.mask;
+		while (true) {
+			long entry = current.buffer.getLong(HEADER_SIZE + 8 * slot);
+			if (entry == 0) {
+				return null;
+			}
+			long recordNumber = (entry & RECORD_MASK) - 1;
+			if ((entry >>> 40) == tag && (recordNumber + 1) * RECORD_SIZE <= length) {
+				ByteBuffer record = read_record(recordNumber * RECORD_SIZE);
+				if (record != null && same_puzzle(record.array(), packed)) {
+					return record;
+				}
+			}
+			slot = (slot + 1) & current.mask;
+		}
+	}
+
+	/**
+	 * Put a record number in the first free slot for its hash.
+	 */
+	private static void insert(Index current, long hash, long recordNumber) {
+		int slot = (int) hash & current.mask;
+		while (current.buffer.getLong(HEADER_SIZE + 8 * slot) != 0) {
+			slot = (slot + 1) & current.mask;
+		}
+		current.buffer.putLong(HEADER_SIZE + 8 * slot, ((hash >>> 40) << 40) | (recordNumber + 1));
+	}
+
+	/**
+	 * @return the record at the offset, or null if it fails its checks
+	 */
+	private ByteBuffer read_record(long offset) throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		while (record.hasRemaining()) {
+			if (data.read(record, offset + record.position()) < 0) {
+				return null;
+			}
+		}
+		if (record.getInt(0) != RECORD_MAGIC || record.getInt(CRC_OFFSET) != crc(record.array())) {
+			return null;
+		}
+		return record;
+	}
+
+	/**
+	 * Make the log and index consistent after opening.
+	 */
+	private void recover() throws IOException {
+		long fileLength = data.size();
+		long indexedLength = -1;
+		int capacity = MIN_CAPACITY;
+		Index existing = map_existing_index();
+		if (existing != null) {
+			capacity = existing.mask + 1;
+			indexedLength = existing.buffer.getLong(INDEXED_LENGTH_OFFSET);
+			count = existing.buffer.getInt(COUNT_OFFSET);
+		}
+
+		// Check records the index does not cover yet, stopping at the first
+		// bad one.
+		long scanFrom = indexedLength >= 0 && indexedLength <= fileLength ? indexedLength : 0;
+		long valid = scanFrom;
+		while (valid + RECORD_SIZE <= fileLength && read_record(valid) != null) {
+			valid += RECORD_SIZE;
+		}
+		boolean truncated = valid < fileLength;
+		if (truncated) {
+			data.truncate(valid);
+		}
+		dataLength = valid;
+
+		if (existing == null || truncated || indexedLength < 0 || indexedLength > valid) {
+			if (existing != null) {
+				existing.channel.close();
+			}
+			int records = (int) (valid / RECORD_SIZE);
+			while (2 * records > capacity) {
+				capacity *= 2;
+			}
+			rebuild_index(capacity);
+			return;
+		}
+
+		index = existing;
+		for (long offset = indexedLength; offset < valid; offset += RECORD_SIZE) {
+			byte[] packed = new byte[SudokuCodec.PACKED_LENGTH];
+			System.arraycopy(read_record(offset).array(), PUZZLE_OFFSET, packed, 0, packed.length);
+			long hash = hash(packed);
+			// A crash may have left the slot written but not the header.
+			if (find(index, valid, packed, hash) == null) {
+				if (2 * (count + 1) > index.mask + 1) {
+					rebuild_index(2 * (index.mask + 1));
+					return;
+				}
+				insert(index, hash, offset / RECORD_SIZE);
+				count++;
+			}
+		}
+		write_header(index, count, valid);
+		index.buffer.force();
+	}
+
+	/**
+	 * @return the index file mapped, or null if it is missing or damaged
+	 */
+	private Index map_existing_index() throws IOException {
+		if (!Files.exists(indexPath)) {
+			return null;
+		}
+		FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long size = channel.size();
+		if (size >= HEADER_SIZE) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			int capacity = buffer.getInt(CAPACITY_OFFSET);
+			if (buffer.getInt(0) == INDEX_MAGIC && buffer.getInt(4) == INDEX_VERSION
+					&& capacity >= MIN_CAPACITY && Integer.bitCount(capacity) == 1
+					&& size == HEADER_SIZE + 8L * capacity) {
+				return new Index(channel, buffer, capacity);
+			}
+		}
+		channel.close();
+		return null;
+	}
+
+	/**
+	 * Build a fresh index of the given capacity from the whole log, then
+	 * swap it in with an atomic rename.
+	 */
+	private void rebuild_index(int capacity) throws IOException {
+		Path temporary = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+		FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + 8L * capacity);
+		Index fresh = new Index(channel, buffer, capacity);
+		buffer.putInt(0, INDEX_MAGIC);
+		buffer.putInt(4, INDEX_VERSION);
+		buffer.putInt(CAPACITY_OFFSET, capacity);
+
+		int records = 0;
+		ByteBuffer chunk = ByteBuffer.allocate(RECORD_SIZE * 1024);
+		byte[] packed = new byte[SudokuCodec.PACKED_LENGTH];
+		for (long offset = 0; offset < dataLength; offset += chunk.capacity()) {
+			chunk.clear();
+			chunk.limit((int) Math.min(chunk.capacity(), dataLength - offset));
+			while (chunk.hasRemaining()) {
+				if (data.read(chunk, offset + chunk.position()) < 0) {
+					throw new IOException("Log shrank while indexing");
+				}
+			}
+			for (int start = 0; start < chunk.limit(); start += RECORD_SIZE) {
+				System.arraycopy(chunk.array(), start + PUZZLE_OFFSET, packed, 0, packed.length);
+				insert(fresh, hash(packed), (offset + start) / RECORD_SIZE);
+				records++;
+			}
+		}
+		write_header(fresh, records, dataLength);
+		buffer.force();
+		Files.move(temporary, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		Index old = index;
+		count = records;
+		index = fresh;
+		if (old != null) {
+			// Readers may still be using the old mapping, which stays valid
+			// after its channel is closed.
+			old.channel.close();
+		}
+	}
+
+	private static void write_header(Index current, int records, long indexedLength) {
+		current.buffer.putInt(COUNT_OFFSET, records);
+		current.buffer.putLong(INDEXED_LENGTH_OFFSET, indexedLength);
+	}
+
+	private static boolean same_puzzle(byte[] record, byte[] packed) {
+		for (int index = 0; index < packed.length; index++) {
+			if (record[PUZZLE_OFFSET + index] != packed[index]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 64-bit FNV-1a with a final mix so the low bits spread well.
+	 */
+	private static long hash(byte[] packed) {
+		long hash = 0xcbf29ce484222325L;
+		for (int index = 0; index < packed.length; index++) {
+			hash = (hash ^ (packed[index] & 0xFF)) * 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private static int crc(byte[] record) {
+		CRC32 crc = new CRC32();
+		crc.update(record, 0, CRC_OFFSET);
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,144 @@
+package Sudoku;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class SolutionStoreTest {
+
+	private final Path directory;
+
+	public SolutionStoreTest() throws IOException {
+		directory = Files.createTempDirectory("solutions");
+	}
+
+	@After
+	public void After() throws IOException {
+		Files.deleteIfExists(directory.resolve("solutions.dat"));
+		Files.deleteIfExists(directory.resolve("solutions.idx"));
+		Files.deleteIfExists(directory);
+	}
+
+	/**
+	 * A different puzzle for each number: the number written into the first
+	 * few cells.
+	 */
+	private static int[] puzzle(int number) {
+		int[] values = new int[81];
+		for (int cell = 0; cell < 7; cell++) {
+			values[cell] = number % 10;
+			number /= 10;
+		}
+		return values;
+	}
+
+	/**
+	 * Make sure the front door solves once and then answers from the store,
+	 * also after reopening.
+	 */
+	@Test
+	public void test_solve_through_store() throws Exception {
+		SolutionStore store = SolutionStore.open(directory);
+		Sudoku first = new Sudoku("Sudoku1.txt");
+		assertTrue(first.solve_sudoku(store));
+		assertTrue(first.get_guess_count() > 0);
+		assertEquals(1, store.size());
+		store.close();
+
+		store = SolutionStore.open(directory);
+		Sudoku second = new Sudoku("Sudoku1.txt");
+		assertTrue(second.solve_sudoku(store));
+		assertEquals(0, second.get_guess_count());
+		assertArrayEquals(first.get_values(), second.get_values());
+		SolutionStore.Entry entry = store.get(new Sudoku("Sudoku1.txt").get_values());
+		assertEquals(first.get_guess_count(), entry.get_guess_count());
+		assertEquals(1, store.size());
+
+		// Only the guesses of the solve that got stored count, not those of an
+		// earlier attempt that ran out.
+		Sudoku retried = new Sudoku("Sudoku2.txt");
+		retried.set_guess_limit(100);
+		assertFalse(retried.solve_sudoku(store));
+		int cutOff = retried.get_guess_count();
+		retried.set_guess_limit(Integer.MAX_VALUE);
+		assertTrue(retried.solve_sudoku(store));
+		entry = store.get(new Sudoku("Sudoku2.txt").get_values());
+		assertEquals(retried.get_guess_count() - cutOff, entry.get_guess_count());
+		assertEquals(2, store.size());
+		store.close();
+	}
+
+	/**
+	 * Make sure lookups still work after the index has grown a few times.
+	 */
+	@Test
+	public void test_growth() throws Exception {
+		SolutionStore store = SolutionStore.open(directory);
+		for (int number = 0; number < 3000; number++) {
+			assertTrue(store.put(puzzle(number), puzzle(number + 1), number, number));
+		}
+		assertFalse(store.put(puzzle(7), puzzle(8), 0, 0));
+		assertEquals(3000, store.size());
+		for (int number = 0; number < 3000; number++) {
+			SolutionStore.Entry entry = store.get(puzzle(number));
+			assertArrayEquals(puzzle(number + 1), entry.get_solution());
+			assertEquals(number, entry.get_guess_count());
+		}
+		assertNull(store.get(puzzle(3000)));
+		store.close();
+	}
+
+	/**
+	 * A torn write at the end of the log is cut off, and a lost index is
+	 * rebuilt.
+	 */
+	@Test
+	public void test_recovery() throws Exception {
+		SolutionStore store = SolutionStore.open(directory);
+		for (int number = 0; number < 10; number++) {
+			store.put(puzzle(number), puzzle(number + 1), number, number);
+		}
+		store.close();
+
+		// Half a record of garbage, as if the process died mid-write.
+		Path log = directory.resolve("solutions.dat");
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			channel.write(ByteBuffer.wrap(new byte[SolutionStore.RECORD_SIZE / 2]));
+		}
+		store = SolutionStore.open(directory);
+		assertEquals(10, store.size());
+		assertEquals(10L * SolutionStore.RECORD_SIZE, Files.size(log));
+		assertArrayEquals(puzzle(4), store.get(puzzle(3)).get_solution());
+		store.close();
+
+		Files.delete(directory.resolve("solutions.idx"));
+		store = SolutionStore.open(directory);
+		assertEquals(10, store.size());
+		assertArrayEquals(puzzle(10), store.get(puzzle(9)).get_solution());
+		store.close();
+	}
+
+	/**
+	 * Make sure a store cannot be opened twice at once, and can be opened
+	 * again after it is closed.
+	 */
+	@Test
+	public void test_single_open() throws Exception {
+		SolutionStore store = SolutionStore.open(directory);
+		try {
+			SolutionStore.open(directory);
+			fail("opened twice");
+		} catch (IOException e) {
+		}
+		store.close();
+		SolutionStore.open(directory).close();
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events from inside the solvers, for finding out
+ * afterwards why a solve was slow. Record with e.g.
+ *
+ * java -XX:StartFlightRecording=filename=solve.jfr ...
+ *
+ * and read with "jfr print --events Sudoku.Solve solve.jfr" or Mission
+ * Control. The jdk.jfr API is why the project needs Java 11. All events are
+ * in the Sudoku category:
+ *
+ * Sudoku.Solve - one solver run on one puzzle; its start time and duration
+ * are the solve start and end
+ *
+ * Sudoku.PropagationRound - one round of solve_by_elimination()
+ *
+ * Sudoku.BacktrackBurst - every 4096 guesses of a recursive solver, so a
+ * search that never ends still shows up
+ *
+ * Sudoku.BudgetOverrun - a guess or conflict budget ran out
+ *
+ * Every event carries the hash of the puzzle's givens so events of one puzzle
+ * can be matched up. The hash and the other fields are only worked out once
+ * shouldCommit() says the event will be recorded. With no recording running
+ * (or with these events disabled) a solve just copies its givens aside and
+ * creates a few small event objects that escape analysis usually removes.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+final class SolverEvents {
+
+	private SolverEvents() {
+	}
+
+	@Name("Sudoku.Solve")
+	@Label("Solve")
+	@Category("Sudoku")
+	@Description("One solver run on one puzzle")
+	@StackTrace(false)
+	static final class Solve extends Event {
+		@Label("Puzzle Hash")
+		long puzzleHash;
+		@Label("Solver")
+		String solver;
+		@Label("Givens")
+		int givens;
+		@Label("Guesses")
+		@Description("Guesses, or decisions for the SAT solver")
+		long guesses;
+		@Label("Solved")
+		boolean solved;
+	}
+
+	@Name("Sudoku.PropagationRound")
+	@Label("Propagation Round")
+	@Category("Sudoku")
+	@Description("One round of elimination over the whole board")
+	@StackTrace(false)
+	static final class PropagationRound extends Event {
+		@Label("Puzzle Hash")
+		long puzzleHash;
+		@Label("Round")
+		int round;
+		@Label("Filled Cells")
+		int filled;
+		@Label("Candidates Left")
+		int candidates;
+	}
+
+	@Name("Sudoku.BacktrackBurst")
+	@Label("Backtrack Burst")
+	@Category("Sudoku")
+	@Description("A run of guesses by a recursive solver")
+	@StackTrace(false)
+	static final class BacktrackBurst extends Event {
+		@Label("Puzzle Hash")
+		long puzzleHash;
+		@Label("Guesses In Burst")
+		int burstGuesses;
+		@Label("Total Guesses")
+		long guesses;
+	}
+
+	@Name("Sudoku.BudgetOverrun")
+	@Label("Budget Overrun")
+	@Category("Sudoku")
+	@Description("A solver gave up because it ran out of guesses or conflicts, or was interrupted")
+	@StackTrace(false)
+	static final class BudgetOverrun extends Event {
+		@Label("Puzzle Hash")
+		long puzzleHash;
+		@Label("Budget")
+		String budget;
+		@Label("Limit")
+		long limit;
+		@Label("Used")
+		long used;
+	}
+
+	/**
+	 * @return a 64-bit FNV-1a hash of the cell values
+	 */
+	static long puzzle_hash(int[] values) {
+		long hash = 0xcbf29ce484222325L;
+		for (int index = 0; index < values.length; index++) {
+			hash = (hash ^ values[index]) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Record that a solver ran out of budget on the puzzle.
+	 *
+	 * @param givens
+	 *            - the puzzle's givens
+	 * @param budget
+	 *            - what ran out, "guesses" or "conflicts"
+	 */
+	static void budget_overrun(int[] givens, String budget, long limit, long used) {
+		BudgetOverrun event = new BudgetOverrun();
+		if (event.shouldCommit()) {
+			event.puzzleHash = puzzle_hash(givens);
+			event.budget = budget;
+			event.limit = limit;
+			event.used = used;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package Sudoku;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class SolverEventsTest {
+
+	/**
+	 * @return the recorded events of the given type
+	 */
+	private static List<RecordedEvent> of_type(List<RecordedEvent> events, String name) {
+		List<RecordedEvent> found = new ArrayList<>();
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals(name)) {
+				found.add(event);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Make sure solving under a recording leaves solve, round, burst and
+	 * overrun events that can be matched up by puzzle hash.
+	 */
+	@Test
+	public void test_events_recorded() throws Exception {
+		Path file = Files.createTempFile("solve", ".jfr");
+		Sudoku recursive = new Sudoku("Sudoku1.txt");
+		Sudoku routed = new Sudoku("Sudoku1.txt");
+		try (Recording recording = new Recording()) {
+			recording.enable("Sudoku.Solve");
+			recording.enable("Sudoku.PropagationRound");
+			recording.enable("Sudoku.BacktrackBurst");
+			recording.enable("Sudoku.BudgetOverrun");
+			recording.start();
+
+			assertTrue(recursive.solve_sudoku());
+			new Sudoku("Sudoku2.txt").solve_by_elimination();
+			// Too few guesses to finish, so the SAT backend takes over.
+			assertTrue(new SolverRouter(10, SolverRouter.DEFAULT_CONFLICT_BUDGET).solve(routed));
+
+			recording.stop();
+			recording.dump(file);
+		}
+		List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+		Files.delete(file);
+
+		List<RecordedEvent> solves = of_type(events, "Sudoku.Solve");
+		long hash = 0;
+		int bursts = 0;
+		for (RecordedEvent solve : solves) {
+			if (solve.getString("solver").equals("recursive") && solve.getBoolean("solved")) {
+				assertEquals(recursive.get_guess_count(), solve.getLong("guesses"));
+				hash = solve.getLong("puzzleHash");
+			}
+		}
+		assertTrue(hash != 0);
+		for (RecordedEvent burst : of_type(events, "Sudoku.BacktrackBurst")) {
+			if (burst.getLong("puzzleHash") == hash) {
+				bursts += burst.getInt("burstGuesses");
+			}
+		}
+		// The first solve and the router's cut off attempt.
+		assertEquals(recursive.get_guess_count() + routed.get_guess_count(), bursts);
+
+		boolean sat = false;
+		for (RecordedEvent solve : solves) {
+			if (solve.getString("solver").equals("sat")) {
+				assertEquals(hash, solve.getLong("puzzleHash"));
+				assertTrue(solve.getBoolean("solved"));
+				sat = true;
+			}
+		}
+		assertTrue(sat);
+
+		List<RecordedEvent> overruns = of_type(events, "Sudoku.BudgetOverrun");
+		assertEquals(1, overruns.size());
+		assertEquals(hash, overruns.get(0).getLong("puzzleHash"));
+		assertEquals("guesses", overruns.get(0).getString("budget"));
+		assertEquals(10, overruns.get(0).getLong("limit"));
+		assertEquals(routed.get_guess_count(), overruns.get(0).getLong("used"));
+
+		List<RecordedEvent> rounds = of_type(events, "Sudoku.PropagationRound");
+		assertTrue(rounds.size() > 0);
+		assertEquals(1, rounds.get(0).getInt("round"));
+		// Hashed from the givens, not from the grid as far as it got.
+		long eliminationHash = SolverEvents.puzzle_hash(new Sudoku("Sudoku2.txt").get_values());
+		for (RecordedEvent round : rounds) {
+			assertEquals(eliminationHash, round.getLong("puzzleHash"));
+		}
+		// Elimination never guesses, so it has no bursts.
+		for (RecordedEvent burst : of_type(events, "Sudoku.BacktrackBurst")) {
+			assertTrue(burst.getLong("puzzleHash") != eliminationHash);
+			assertTrue(burst.getInt("burstGuesses") > 0);
+		}
+	}
+}
@@ -0,0 +1,275 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Races several engines on copies of a puzzle and keeps the first answer
+ * that checks out; the others are cancelled through thread interruption. An
+ * engine reporting that there is no solution also ends the race.
+ *
+ * Every win is recorded against the winning engine and against a simple
+ * feature of the puzzle (how many givens it has, in buckets of 5). Once
+ * enough races have been run, route() picks the engine that usually wins for
+ * puzzles like this one, so solve_routed() can skip the race.
+ *
+ * A portfolio can be shared between threads. It does not own its executor;
+ * the executor needs a thread per engine for the race to be fair.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+public class SolverPortfolio {
+
+	// Givens per feature bucket; there are 81 / 5 + 1 buckets.
+	private static final int BUCKET_WIDTH = 5;
+	// Wins needed in a bucket before route() trusts it.
+	private static final int MIN_ROUTING_WINS = 10;
+
+	private final ExecutorService executor;
+	private final List<SudokuEngine> engines;
+	// Wins per bucket, one counter per engine.
+	private final ConcurrentHashMap<Integer, AtomicLongArray> wins = new ConcurrentHashMap<>();
+
+	/**
+	 * @param executor
+	 *            - runs the engines
+	 * @param engines
+	 *            - engines to race, at least one
+	 */
+	public SolverPortfolio(ExecutorService executor, SudokuEngine... engines) {
+		if (engines.length == 0) {
+			throw new IllegalArgumentException("A portfolio needs at least one engine");
+		}
+		this.executor = executor;
+		this.engines = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(engines)));
+	}
+
+	/**
+	 * A portfolio of the recursive, propagation, exact cover and SAT engines.
+	 */
+	public static SolverPortfolio with_default_engines(ExecutorService executor) {
+		return new SolverPortfolio(executor, new RecursiveEngine(), new PropagationSolver(), new ExactCoverSolver(),
+				new SatEngine());
+	}
+
+	/**
+	 * Race all engines and solve the puzzle in place with the first verified
+	 * answer.
+	 *
+	 * @return true if solved, false if there is no solution
+	 * @throws IllegalStateException
+	 *             if no engine came up with an answer, e.g. because they all
+	 *             threw; the last failure is the cause
+	 */
+	public boolean solve(Sudoku sudoku) throws InterruptedException {
+		int[] givens = sudoku.get_values();
+		CompletionService<int[]> race = new ExecutorCompletionService<>(executor);
+		List<Future<int[]>> runners = new ArrayList<>();
+		Throwable failure = null;
+		try {
+			for (int index = 0; index < engines.size(); index++) {
+				final SudokuEngine engine = engines.get(index);
+				final int[] copy = givens.clone();
+				runners.add(race.submit(() -> engine.solve(copy)));
+			}
+			for (int finished = 0; finished < runners.size(); finished++) {
+				Future<int[]> done = race.take();
+				int[] solution;
+				try {
+					solution = done.get();
+				} catch (ExecutionException e) {
+					// A broken engine just loses the race.
+					failure = e.getCause();
+					continue;
+				}
+				int winner = runners.indexOf(done);
+				if (solution == null) {
+					// Proof there is no solution, no need to wait for the rest.
+					record_win(givens, winner);
+					return false;
+				}
+				if (is_solution_of(givens, solution)) {
+					record_win(givens, winner);
+					sudoku.set_values(solution);
+					return true;
+				}
+				failure = new IllegalStateException(engines.get(winner).name() + " returned a wrong solution");
+			}
+			throw new IllegalStateException("No engine solved the puzzle", failure);
+		} finally {
+			for (Future<int[]> runner : runners) {
+				runner.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Solve with the engine that usually wins for puzzles like this one,
+	 * racing only if there is not enough history yet or it fails.
+	 */
+	public boolean solve_routed(Sudoku sudoku) throws InterruptedException {
+		SudokuEngine engine = route(sudoku);
+		if (engine != null) {
+			int[] givens = sudoku.get_values();
+			int[] solution = engine.solve(givens.clone());
+			if (solution != null && is_solution_of(givens, solution)) {
+				sudoku.set_values(solution);
+				return true;
+			}
+		}
+		return solve(sudoku);
+	}
+
+	/**
+	 * @return the engine with the most wins on puzzles with a similar number
+	 *         of givens, or null if there are too few races to tell
+	 */
+	public SudokuEngine route(Sudoku sudoku) {
+		AtomicLongArray counts = wins.get(feature_bucket(sudoku.get_values()));
+		if (counts == null) {
+			return null;
+		}
+		int best = 0;
+		long total = 0;
+		for (int index = 0; index < counts.length(); index++) {
+			total += counts.get(index);
+			if (counts.get(index) > counts.get(best)) {
+				best = index;
+			}
+		}
+		return total < MIN_ROUTING_WINS ? null : engines.get(best);
+	}
+
+	/**
+	 * @return total wins per engine name
+	 */
+	public Map<String, Long> get_wins() {
+		Map<String, Long> totals = new TreeMap<>();
+		for (SudokuEngine engine : engines) {
+			totals.put(engine.name(), 0L);
+		}
+		for (AtomicLongArray counts : wins.values()) {
+			for (int index = 0; index < counts.length(); index++) {
+				String name = engines.get(index).name();
+				totals.put(name, totals.get(name) + counts.get(index));
+			}
+		}
+		return totals;
+	}
+
+	/**
+	 * @return the engines in the race
+	 */
+	public List<SudokuEngine> get_engines() {
+		return engines;
+	}
+
+	private void record_win(int[] givens, int engine) {
+		wins.computeIfAbsent(feature_bucket(givens), bucket -> new AtomicLongArray(engines.size()))
+				.incrementAndGet(engine);
+	}
+
+	/**
+	 * Bucket puzzles by how many givens they have.
+	 */
+	static int feature_bucket(int[] values) {
+		int givens = 0;
+		for (int cell = 0; cell < values.length; cell++) {
+			if (values[cell] != 0) {
+				givens++;
+			}
+		}
+		return givens / BUCKET_WIDTH;
+	}
+
+	/**
+	 * Engines are not trusted: check the answer keeps the givens and is a
+	 * valid full grid.
+	 */
+	static boolean is_solution_of(int[] givens, int[] solution) {
+		if (solution.length != 81) {
+			return false;
+		}
+		for (int cell = 0; cell < 81; cell++) {
+			if (solution[cell] < 1 || solution[cell] > 9 || (givens[cell] != 0 && givens[cell] != solution[cell])) {
+				return false;
+			}
+		}
+		return new Sudoku(solution).verify();
+	}
+
+	/**
+	 * The original recursive solver as an engine.
+	 */
+	static class RecursiveEngine implements SudokuEngine {
+		@Override
+		public String name() {
+			return "recursive";
+		}
+
+		@Override
+		public int[] solve(int[] values) {
+			// Clashing givens would only show up after searching every
+			// combination of the cells before them.
+			int[] used = new int[27];
+			for (int cell = 0; cell < 81; cell++) {
+				if (values[cell] != 0) {
+					int row = Topology.NINE.row[cell];
+					int column = 9 + Topology.NINE.column[cell];
+					int box = 18 + Topology.NINE.box[cell];
+					int bit = 1 << values[cell];
+					if (((used[row] | used[column] | used[box]) & bit) != 0) {
+						return null;
+					}
+					used[row] |= bit;
+					used[column] |= bit;
+					used[box] |= bit;
+				}
+			}
+			Sudoku sudoku = new Sudoku(values);
+			return sudoku.solve_sudoku() ? sudoku.get_values() : null;
+		}
+	}
+
+	/**
+	 * The CDCL backend as an engine.
+	 */
+	static class SatEngine implements SudokuEngine {
+		@Override
+		public String name() {
+			return "sat";
+		}
+
+		@Override
+		public int[] solve(int[] values) {
+			SudokuCnf cnf = new SudokuCnf(3, values);
+			CdclSolver solver = cnf.to_solver();
+			switch (solver.solve(SolverRouter.DEFAULT_CONFLICT_BUDGET)) {
+			case SATISFIABLE:
+				return cnf.decode(solver.get_model());
+			case UNSATISFIABLE:
+				return null;
+			default:
+				if (Thread.currentThread().isInterrupted()) {
+					return null;
+				}
+				throw new IllegalStateException("SAT engine ran out of conflicts");
+			}
+		}
+	}
+}
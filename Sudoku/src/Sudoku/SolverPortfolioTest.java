@@ -0,0 +1,105 @@
+package Sudoku;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class SolverPortfolioTest {
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@After
+	public void After() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Make sure each engine solves a puzzle on its own.
+	 */
+	@Test
+	public void test_engines() throws Exception {
+		int[] givens = new Sudoku("Sudoku3.txt").get_values();
+		for (SudokuEngine engine : SolverPortfolio.with_default_engines(executor).get_engines()) {
+			int[] solution = engine.solve(givens.clone());
+			assertNotNull(engine.name(), solution);
+			assertTrue(engine.name(), SolverPortfolio.is_solution_of(givens, solution));
+		}
+	}
+
+	/**
+	 * Make sure engines agree there is no answer when two givens clash.
+	 */
+	@Test
+	public void test_engines_no_solution() {
+		int[] givens = new int[81];
+		givens[0] = 5;
+		givens[80] = 5;
+		givens[8] = 5;
+		for (SudokuEngine engine : SolverPortfolio.with_default_engines(executor).get_engines()) {
+			assertNull(engine.name(), engine.solve(givens.clone()));
+		}
+	}
+
+	/**
+	 * Make sure a race nobody finishes is not taken as proof of no solution.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void test_race_all_engines_fail() throws Exception {
+		SudokuEngine broken = new SudokuEngine() {
+			@Override
+			public String name() {
+				return "broken";
+			}
+
+			@Override
+			public int[] solve(int[] values) {
+				throw new IllegalStateException("gave up");
+			}
+		};
+		new SolverPortfolio(executor, broken, broken).solve(new Sudoku("Sudoku1.txt"));
+	}
+
+	/**
+	 * Race on a few puzzles and check every win is counted.
+	 */
+	@Test
+	public void test_race() throws Exception {
+		SolverPortfolio portfolio = SolverPortfolio.with_default_engines(executor);
+		String[] files = { "Sudoku1.txt", "Sudoku2.txt", "Sudoku3.txt" };
+		for (String file : files) {
+			Sudoku puzzle = new Sudoku(file);
+			assertTrue(portfolio.solve(puzzle));
+			assertTrue(puzzle.verify());
+		}
+		long total = 0;
+		for (Map.Entry<String, Long> entry : portfolio.get_wins().entrySet()) {
+			total += entry.getValue();
+		}
+		assertEquals(files.length, total);
+
+		// With enough history the portfolio picks an engine without racing.
+		Sudoku puzzle = new Sudoku("Sudoku1.txt");
+		assertNull(portfolio.route(puzzle));
+		for (int race = 0; race < 10; race++) {
+			portfolio.solve(new Sudoku("Sudoku1.txt"));
+		}
+		assertNotNull(portfolio.route(puzzle));
+		assertTrue(portfolio.solve_routed(puzzle));
+		assertTrue(puzzle.verify());
+	}
+
+	/**
+	 * An unsolvable puzzle ends the race as soon as one engine proves it,
+	 * without waiting for the slower ones.
+	 */
+	@Test(timeout = 10000)
+	public void test_race_no_solution() throws Exception {
+		SolverPortfolio portfolio = SolverPortfolio.with_default_engines(executor);
+		assertFalse(portfolio.solve(new Sudoku("/sample_puzzles/puzzle1.txt")));
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Front door that picks a solver for a puzzle. The cheap recursive solver
+ * gets the first try with a guess budget; if it runs out, the puzzle is
+ * encoded as CNF and handed to the CDCL solver. Boards bigger than 9x9 go
+ * straight to the CDCL solver since the recursive solver only handles 9x9.
+ *
+ * The router has no per-call state, so one instance can be shared between
+ * threads.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+public class SolverRouter {
+
+	// Defaults: enough guesses for typical puzzles, enough conflicts for
+	// anything that has a solution at all.
+	public static final int DEFAULT_GUESS_BUDGET = 200000;
+	public static final long DEFAULT_CONFLICT_BUDGET = 1000000;
+
+	private final int guessBudget;
+	private final long conflictBudget;
+
+	// How many puzzles each backend solved.
+	private final AtomicLong solvedByRecursion = new AtomicLong();
+	private final AtomicLong solvedBySat = new AtomicLong();
+
+	public SolverRouter() {
+		this(DEFAULT_GUESS_BUDGET, DEFAULT_CONFLICT_BUDGET);
+	}
+
+	/**
+	 * @param guessBudget
+	 *            - guesses the recursive solver may make before the SAT
+	 *            backend takes over
+	 * @param conflictBudget
+	 *            - conflicts the SAT backend may hit before giving up
+	 */
+	public SolverRouter(int guessBudget, long conflictBudget) {
+		this.guessBudget = guessBudget;
+		this.conflictBudget = conflictBudget;
+	}
+
+	/**
+	 * Solve the puzzle in place. Its guess count shows what the recursive
+	 * solver tried, also when the SAT backend had to finish the job.
+	 *
+	 * @return true if solved, false if there is no solution or both budgets
+	 *         ran out
+	 */
+	public boolean solve(Sudoku sudoku) {
+		// The guess count carries over from earlier solves, so the budget
+		// starts from where it is now. Out of guesses, the recursive solver
+		// unwinds back to the givens.
+		int start = sudoku.get_guess_count();
+		int limit = sudoku.get_guess_limit();
+		sudoku.set_guess_limit((int) Math.min((long) start + guessBudget, Integer.MAX_VALUE));
+		boolean solved = sudoku.solve_sudoku();
+		boolean overBudget = sudoku.is_over_budget();
+		// Leave the caller's own limit as it was.
+		sudoku.set_guess_limit(limit);
+		if (solved) {
+			solvedByRecursion.incrementAndGet();
+			return true;
+		}
+		if (!overBudget) {
+			// The recursive solver searched everything, there is no solution.
+			return false;
+		}
+		// Unwound, the puzzle holds just its givens again.
+		SolverEvents.budget_overrun(sudoku.get_values(), "guesses", guessBudget,
+				sudoku.get_guess_count() - start);
+		int[] solution = SudokuCnf.encode(sudoku).solve(conflictBudget);
+		if (solution == null) {
+			return false;
+		}
+		sudoku.set_values(solution);
+		solvedBySat.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Solve a board of any size with the SAT backend.
+	 *
+	 * @param boxSize
+	 *            - width of a box, e.g. 5 for 25x25
+	 * @param values
+	 *            - cell values in row-major order, 0 meaning empty
+	 * @return the solved values, or null
+	 */
+	public int[] solve(int boxSize, int[] values) {
+		if (boxSize == 3) {
+			Sudoku sudoku = new Sudoku(values);
+			return solve(sudoku) ? sudoku.get_values() : null;
+		}
+		int[] solution = new SudokuCnf(boxSize, values).solve(conflictBudget);
+		if (solution != null) {
+			solvedBySat.incrementAndGet();
+		}
+		return solution;
+	}
+
+	/**
+	 * @return puzzles solved by the recursive solver
+	 */
+	public long get_solved_by_recursion() {
+		return solvedByRecursion.get();
+	}
+
+	/**
+	 * @return puzzles the recursive solver gave up on and SAT solved
+	 */
+	public long get_solved_by_sat() {
+		return solvedBySat.get();
+	}
+}
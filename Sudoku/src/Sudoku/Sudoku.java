@@ -5,11 +5,13 @@ package Sudoku;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Scanner;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Sudoku class, that stores a sudoku puzzle as a 1D array and solves the puzzle
@@ -20,12 +22,40 @@ import java.util.Scanner;
  */
 public class Sudoku {
 
+	// Board geometry, looked up instead of computed; see Topology.
+	private static final Topology BOARD = Topology.NINE;
+	private static final int[] ROW = BOARD.row;
+	private static final int[] COLUMN = BOARD.column;
+	private static final int[] BOX = BOARD.box;
+	private static final int[] UNITS = BOARD.units;
+	private static final int[] PEERS = BOARD.peers;
+	private static final int PEER_COUNT = BOARD.peerCount;
+
 	// Integer array representing all the values in our puzzle.
 	private int[] puzzle = new int[81];
 	// Number of guesses for the recursive solver.
 	private int guessCount = 0;
+	// Guesses the recursive solvers may make before giving up.
+	private int guessLimit = Integer.MAX_VALUE;
+	// Set when the recursive solvers notice their thread was interrupted.
+	private boolean interrupted;
 	// If verifying puzzle, alter validity tests slightly for reuse.
 	private boolean isChecking;
+	// Failed sub-searches remembered by the learning solver.
+	private NogoodTable nogoods;
+	// Givens of the current solve, and their hash for flight recorder events
+	// once one has been committed (0 until then).
+	private final int[] traceGivens = new int[81];
+	private long traceHash;
+	// Flight recorder event for the current run of guesses, and the guess
+	// count it started at.
+	private SolverEvents.BacktrackBurst burst;
+	private int burstStart;
+	// Used digits (bit d for digit d) per row, column and box while the
+	// learning solver runs.
+	private int[] rowUsed;
+	private int[] columnUsed;
+	private int[] boxUsed;
 
 	/**
 	 * Constructor
@@ -35,22 +65,13 @@ public class Sudoku {
 	public Sudoku(String fileName) throws Exception {
 		File sudokuFile = new File("src/puzzles/" + fileName);
 		try {
-			Scanner scanner = new Scanner(sudokuFile);
-			int index = 0;
-			// Parse the puzzle file and place the values inside of our puzzle
-			// array.
-			while (scanner.hasNextInt()) {
-				int s = scanner.nextInt();
-				puzzle[index] = s;
-				index++;
-			}
-
-			if (index > 81) {// because index increments one value after there's
-								// 80 indices, so we have to make the inequality
-								// less than 81
+			// Read the whole file and pick the values out of it in one pass.
+			byte[] contents = Files.readAllBytes(sudokuFile.toPath());
+			if (SudokuCodec.decode(contents, 0, contents.length, puzzle) < 0) {
+				// More than 81 values in the file.
 				throw new Exception();
 			}
-		} catch (FileNotFoundException e) {
+		} catch (NoSuchFileException e) {
 			System.out.println("File " + fileName + " not found!");
 			e.printStackTrace();
 		}
@@ -64,16 +85,44 @@ public class Sudoku {
 	 *
 	 */
 	public Sudoku(BufferedReader reader) throws IOException {
-		for (int i = 0; i < 9; i++) {
-			int count = 0;
-			while (count < 9) {
-				int currentValue = Character.getNumericValue(reader.read());
-				if (currentValue >= 0) {
-					puzzle[count + i * 9] = currentValue;
-					count++;
-				}
+		int count = 0;
+		while (count < 81) {
+			int character = reader.read();
+			if (character < 0) {
+				throw new IOException("Puzzle ended after " + count + " values");
+			}
+			int currentValue = SudokuCodec.cell_value(character);
+			if (currentValue >= 0) {
+				puzzle[count] = currentValue;
+				count++;
+			}
+		}
+	}
+
+	/**
+	 * Create a new puzzle from 81 values in row-major order, 0 meaning empty.
+	 * The values are copied, so the caller may reuse its array.
+	 * 
+	 * @param values
+	 *            - the 81 cell values (0-9)
+	 */
+	public Sudoku(int[] values) {
+		if (values.length != 81) {
+			throw new IllegalArgumentException("A puzzle needs 81 values, got " + values.length);
+		}
+		for (int index = 0; index < 81; index++) {
+			if (values[index] < 0 || values[index] > 9) {
+				throw new IllegalArgumentException("Bad value " + values[index] + " at " + index);
 			}
 		}
+		System.arraycopy(values, 0, puzzle, 0, 81);
+	}
+
+	/**
+	 * @return a copy of the puzzle as a 1D array in row-major order
+	 */
+	public int[] get_values() {
+		return puzzle.clone();
 	}
 
 	/**
@@ -99,6 +148,139 @@ public class Sudoku {
 		return this.guessCount;
 	}
 
+	/**
+	 * Limit how many guesses the recursive solvers may make. Once the limit is
+	 * passed they unwind, leaving the puzzle as it was, and report failure.
+	 * The limit applies to get_guess_count(), which keeps counting across
+	 * solves, so to allow n more guesses set it to get_guess_count() + n.
+	 * 
+	 * @param limit
+	 *            - maximum value of the guess count
+	 */
+	public void set_guess_limit(int limit) {
+		this.guessLimit = limit;
+	}
+
+	/**
+	 * @return the guess limit, Integer.MAX_VALUE if none was set
+	 */
+	public int get_guess_limit() {
+		return this.guessLimit;
+	}
+
+	/**
+	 * @return true if the guess count is past the guess limit, or the latest
+	 *         solve_sudoku() or solve_sudoku_with_nogoods() stopped because its
+	 *         thread was interrupted. A solve that failed this way gave up,
+	 *         rather than found that the puzzle has no solution.
+	 */
+	public boolean is_over_budget() {
+		return this.guessCount > this.guessLimit || this.interrupted;
+	}
+
+	/**
+	 * Count a guess for the recursive solvers.
+	 * 
+	 * @return true if the solver should give up. The interrupt flag is only
+	 *         polled every 4096 guesses to keep this cheap.
+	 */
+	private boolean count_guess() {
+		this.guessCount++;
+		if ((this.guessCount & 0xFFF) == 0) {
+			if (Thread.currentThread().isInterrupted()) {
+				this.interrupted = true;
+			}
+			trace_burst(true);
+		}
+		return is_over_budget();
+	}
+
+	/**
+	 * Start the flight recorder event for a solve of the current puzzle.
+	 */
+	private SolverEvents.Solve begin_solve() {
+		SolverEvents.Solve event = new SolverEvents.Solve();
+		// Nothing carries over from an earlier solve but the guess count.
+		this.interrupted = false;
+		// Kept so events can be tied to the puzzle however far the solve has
+		// got; hashed only when an event is actually recorded.
+		System.arraycopy(puzzle, 0, traceGivens, 0, 81);
+		this.traceHash = 0;
+		this.burst = null;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * @return the hash of the givens of the current solve
+	 */
+	private long trace_hash() {
+		if (this.traceHash == 0) {
+			this.traceHash = SolverEvents.puzzle_hash(traceGivens);
+		}
+		return this.traceHash;
+	}
+
+	/**
+	 * Finish the flight recorder event of a solve.
+	 * 
+	 * @return solved, for chaining
+	 */
+	private boolean end_solve(SolverEvents.Solve event, String solver, boolean solved) {
+		trace_burst(false);
+		event.end();
+		if (event.shouldCommit()) {
+			event.puzzleHash = trace_hash();
+			for (int index = 0; index < 81; index++) {
+				if (traceGivens[index] != 0) {
+					event.givens++;
+				}
+			}
+			event.solver = solver;
+			event.guesses = this.guessCount;
+			event.solved = solved;
+			event.commit();
+		}
+		return solved;
+	}
+
+	/**
+	 * Commit the burst event of the guesses since the last call, if any. Only
+	 * the recursive solvers start bursts, and a burst without guesses is not
+	 * recorded.
+	 * 
+	 * @param another
+	 *            - whether to start the next burst
+	 */
+	private void trace_burst(boolean another) {
+		SolverEvents.BacktrackBurst ended = this.burst;
+		this.burst = null;
+		if (ended != null) {
+			ended.end();
+			if (this.guessCount != this.burstStart && ended.shouldCommit()) {
+				ended.puzzleHash = trace_hash();
+				ended.burstGuesses = this.guessCount - this.burstStart;
+				ended.guesses = this.guessCount;
+				ended.commit();
+			}
+		}
+		if (another) {
+			SolverEvents.BacktrackBurst next = new SolverEvents.BacktrackBurst();
+			if (next.isEnabled()) {
+				next.begin();
+				this.burst = next;
+				this.burstStart = this.guessCount;
+			}
+		}
+	}
+
+	/**
+	 * Overwrite the puzzle with 81 values from another solver.
+	 */
+	void set_values(int[] values) {
+		System.arraycopy(values, 0, puzzle, 0, 81);
+	}
+
 	/**
 	 * Function: valid_for_row
 	 *
@@ -130,21 +312,20 @@ public class Sudoku {
 
 		int count = 0;
 
-		int currentRow = 9 * row;
-		for (int currentColumn = 1; currentColumn < 9; currentColumn++) {
-			if (puzzle[currentRow + currentColumn] == number) {
+		int start = BOARD.row_start(row);
+		for (int index = start; index < start + 9; index++) {
+			if (puzzle[UNITS[index]] == number) {
 				// System.out.println("false");
 				count++;
 			}
 		}
 
-		if (count == 1 && !isChecking) {
-			return false;
-		} else if (count == 1 && isChecking) {
-			return true;
-		} else {
-			return true;
+		if (isChecking) {
+			// The value being checked is in the puzzle itself, so it must be
+			// there exactly once.
+			return count == 1;
 		}
+		return count == 0;
 	}
 
 	/**
@@ -157,20 +338,20 @@ public class Sudoku {
 
 		int count = 0;
 
-		for (int currentRow = 0; currentRow < 9; currentRow++) {
-			if (puzzle[col + (9 * currentRow)] == number) {
+		int start = BOARD.column_start(col);
+		for (int index = start; index < start + 9; index++) {
+			if (puzzle[UNITS[index]] == number) {
 				// System.out.println("false");
 				count++;
 			}
 		}
 
-		if (count == 1 && !isChecking) {
-			return false;
-		} else if (count == 1 && isChecking) {
-			return true;
-		} else {
-			return true;
+		if (isChecking) {
+			// The value being checked is in the puzzle itself, so it must be
+			// there exactly once.
+			return count == 1;
 		}
+		return count == 0;
 	}
 
 	/**
@@ -184,29 +365,23 @@ public class Sudoku {
 	 *
 	 */
 	public boolean valid_for_box(int box, int number) {
-		// Determine which row/col to start in based on box.
-		int rowStart = 3 * (box / 3);
-		int colStart = 3 * (box % 3);
-
 		int count = 0;
 
-		for (int row = rowStart; row < rowStart + 3; row++) {
-			for (int col = colStart; col < colStart + 3; col++) {
-				// For each value in box, test if it is the given number.
-				if (this.puzzle[(9 * row) + col] == number) {
-					// System.out.println("false");
-					count++;
-				}
+		// For each value in box, test if it is the given number.
+		int start = BOARD.box_start(box);
+		for (int index = start; index < start + 9; index++) {
+			if (this.puzzle[UNITS[index]] == number) {
+				// System.out.println("false");
+				count++;
 			}
 		}
 
-		if (count == 1 && !isChecking) {
-			return false;
-		} else if (count == 1 && isChecking) {
-			return true;
-		} else {
-			return true;
+		if (isChecking) {
+			// The value being checked is in the puzzle itself, so it must be
+			// there exactly once.
+			return count == 1;
 		}
+		return count == 0;
 	}
 
 	/**
@@ -230,13 +405,28 @@ public class Sudoku {
 			return false;
 		}
 
-		// Convert position to row, col, box for use in validation.
-		int row = position / 9;
-		int column = position % 9;
-		int box = (3 * (row / 3)) + (column / 3);
+		if (!isChecking) {
+			if (possible_value < 0 || possible_value > 9) {
+				throw new IndexOutOfBoundsException();
+			}
+			// The value may be nowhere in the row, column or box: the cell
+			// itself and its 20 peers.
+			if (puzzle[position] == possible_value) {
+				return false;
+			}
+			int start = position * PEER_COUNT;
+			for (int index = start; index < start + PEER_COUNT; index++) {
+				if (puzzle[PEERS[index]] == possible_value) {
+					return false;
+				}
+			}
+			return true;
+		}
 
-		if (this.valid_for_row(row, possible_value) && this.valid_for_column(column, possible_value)
-				&& this.valid_for_box(box, possible_value)) {
+		// Look up row, col, box for use in validation.
+		if (this.valid_for_row(ROW[position], possible_value)
+				&& this.valid_for_column(COLUMN[position], possible_value)
+				&& this.valid_for_box(BOX[position], possible_value)) {
 			return true;
 		}
 		return false;
@@ -248,8 +438,10 @@ public class Sudoku {
 	 * @return true if successful
 	 */
 	public boolean solve_sudoku() {
+		SolverEvents.Solve event = begin_solve();
+		trace_burst(true);
 		solve_sudoku(0);
-		if (verify()) {
+		if (end_solve(event, "recursive", verify())) {
 			// System.out.println("Puzzle solved.");
 			// System.out.println(this.toString());
 			// System.out.println("Puzzle solved in " + this.guessCount + "
@@ -260,6 +452,43 @@ public class Sudoku {
 		}
 	}
 
+	/**
+	 * Solve the sudoku problem, using a stored solution if this puzzle has
+	 * been solved before and storing the solution otherwise.
+	 * 
+	 * @param store
+	 *            - solutions from earlier runs
+	 * @return true if successful
+	 */
+	public boolean solve_sudoku(SolutionStore store) throws IOException {
+		SolutionStore.Entry known = store.get(puzzle);
+		if (known != null) {
+			set_values(known.get_solution());
+			return true;
+		}
+		int[] givens = puzzle.clone();
+		// The guess count runs on over solves, so store only this one's part.
+		int guesses = get_guess_count();
+		long start = System.nanoTime();
+		if (!solve_sudoku()) {
+			return false;
+		}
+		store.put(givens, puzzle, this.guessCount - guesses, System.nanoTime() - start);
+		return true;
+	}
+
+	/**
+	 * Every solution of the puzzle, found lazily as the stream is consumed.
+	 * The puzzle itself is not changed. Use .parallel() to spread the search
+	 * over several cores, e.g. solutions().parallel().count() to count the
+	 * solutions, or .limit(2).count() to check that there is only one.
+	 * 
+	 * @return a stream of solved 81 value arrays, in no particular order
+	 */
+	public Stream<int[]> solutions() {
+		return StreamSupport.stream(new SolutionSpliterator(puzzle), false);
+	}
+
 	/**
 	 *
 	 * Function solve_sudoku( puzzle, position )
@@ -283,8 +512,11 @@ public class Sudoku {
 		if (valueAtIndex == 0) {
 			// Iterate through the possible solutions for this position.
 			for (int possibleSolution = 1; possibleSolution <= 9; possibleSolution++) {
-				// Increment for guess.
-				this.guessCount++;
+				// Increment for guess, and give up once out of guesses.
+				if (count_guess()) {
+					puzzle[position] = 0;
+					return false;
+				}
 				// Check if it is a valid solution.
 				if (is_valid(position, possibleSolution)) {
 					puzzle[position] = possibleSolution;
@@ -311,37 +543,103 @@ public class Sudoku {
 	}
 
 	/**
-	 * Function: toString( )
-	 *
-	 * @return a string showing the state of the board
-	 *
+	 * Solve the sudoku problem like solve_sudoku(), but remember sub-searches
+	 * that failed and skip them when the same situation comes up again. See
+	 * NogoodTable for what counts as the same situation.
+	 * 
+	 * @param capacity
+	 *            - how many failures to remember at most
+	 * @return true if successful
 	 */
-	@Override
-	public String toString() {
-		String puzzleString = "";
-		// Get puzzle as matrix.
-		int[][] puzzle = get_puzzle();
+	public boolean solve_sudoku_with_nogoods(int capacity) {
+		this.nogoods = new NogoodTable(capacity);
+		this.rowUsed = new int[9];
+		this.columnUsed = new int[9];
+		this.boxUsed = new int[9];
+		for (int position = 0; position < 81; position++) {
+			if (puzzle[position] != 0) {
+				rowUsed[ROW[position]] |= 1 << puzzle[position];
+				columnUsed[COLUMN[position]] |= 1 << puzzle[position];
+				boxUsed[BOX[position]] |= 1 << puzzle[position];
+			}
+		}
+		SolverEvents.Solve event = begin_solve();
+		trace_burst(true);
+		solve_learning(0);
+		return end_solve(event, "nogoods", verify());
+	}
 
-		// iterate through the puzzle and paste with space after each number and
-		// new line after each row.
-		for (int row = 0; row < 9; row++) {
-			if (row % 3 == 0) {
-				puzzleString += "---------------------\n";
+	/**
+	 * @return the nogoods recorded by the last solve_sudoku_with_nogoods(),
+	 *         or null if it has not been run
+	 */
+	public NogoodTable get_nogoods() {
+		return this.nogoods;
+	}
+
+	/**
+	 * Recursive step of solve_sudoku_with_nogoods(). Same order and guess
+	 * counting as solve_sudoku(int), but checks the nogood table before
+	 * trying values for an empty position, and records the position as a
+	 * nogood if none of the values work.
+	 */
+	private boolean solve_learning(int position) {
+		// Skip over values that are already set.
+		while (position < 81 && puzzle[position] != 0) {
+			position++;
+		}
+		if (position == 81) {
+			return true;
+		}
+		if (nogoods.contains(position, rowUsed, columnUsed, boxUsed)) {
+			return false;
+		}
+
+		int row = ROW[position];
+		int column = COLUMN[position];
+		int box = BOX[position];
+		int used = rowUsed[row] | columnUsed[column] | boxUsed[box];
+		for (int possibleSolution = 1; possibleSolution <= 9; possibleSolution++) {
+			if (count_guess()) {
+				puzzle[position] = 0;
+				return false;
 			}
-			for (int column = 0; column < 9; column++) {
-				if (column % 3 == 0) {
-					puzzleString += "|";
-				}
-				puzzleString += puzzle[row][column] + " ";
-				if (column == 8) {
-					puzzleString += "|";
+			int bit = 1 << possibleSolution;
+			if ((used & bit) == 0) {
+				puzzle[position] = possibleSolution;
+				rowUsed[row] |= bit;
+				columnUsed[column] |= bit;
+				boxUsed[box] |= bit;
+
+				if (solve_learning(position + 1)) {
+					return true;
 				}
+
+				rowUsed[row] &= ~bit;
+				columnUsed[column] &= ~bit;
+				boxUsed[box] &= ~bit;
 			}
-			puzzleString += "\n";
 		}
-		puzzleString += "---------------------\n";
-		return puzzleString;
+		// Nothing works here with what is used so far, remember that. A
+		// search cut short by the guess limit proves nothing though.
+		puzzle[position] = 0;
+		if (!is_over_budget()) {
+			nogoods.add(position, rowUsed, columnUsed, boxUsed);
+		}
+		return false;
+	}
 
+	/**
+	 * Function: toString( )
+	 *
+	 * @return a string showing the state of the board
+	 *
+	 */
+	@Override
+	public String toString() {
+		// The codec writes the same grid: dashes between bands of rows, bars
+		// between boxes, a space after each number.
+		return SudokuCodec.encode(puzzle, SudokuCodec.Format.PRETTY);
 	}
 
 	/**
@@ -361,7 +659,10 @@ public class Sudoku {
 			}
 
 			// Check value at position.
-			this.is_valid(index, puzzle[index]);
+			if (!this.is_valid(index, puzzle[index])) {
+				this.isChecking = false;
+				return false;
+			}
 
 		}
 		this.isChecking = false;
@@ -392,7 +693,11 @@ public class Sudoku {
 			possibilities.add(index, possibleSet);
 		}
 
+		SolverEvents.Solve event = begin_solve();
+		int rounds = 0;
 		do {
+			SolverEvents.PropagationRound round = new SolverEvents.PropagationRound();
+			round.begin();
 			// Write solving code here.
 			for (int index = 0; index < 81; index++) {
 				if (puzzle[index] != 0) {
@@ -406,8 +711,23 @@ public class Sudoku {
 					}
 				}
 			}
+			rounds++;
+			round.end();
+			if (round.shouldCommit()) {
+				round.puzzleHash = trace_hash();
+				round.round = rounds;
+				for (int index = 0; index < 81; index++) {
+					if (puzzle[index] != 0) {
+						round.filled++;
+					}
+					round.candidates += possibilities.get(index).size();
+				}
+				round.commit();
+			}
 			// Decides whether to continue based on vals in possibilities.
 		} while (continueSolve(possibilities));
+		// Whether every cell got filled is only worked out when recording.
+		end_solve(event, "elimination", event.isEnabled() && percentComplete() == 1.0);
 	}
 
 	/**
@@ -460,15 +780,9 @@ public class Sudoku {
 	 *            - the value to prune
 	 */
 	protected static void prune_box(ArrayList<HashSet<Integer>> possibilities, int position, Integer value) {
-		int row = position / 9;
-		int column = position % 9;
-		int box = (3 * (row / 3)) + (column / 3);
-		int rowStart = 3 * (box / 3);
-		int colStart = 3 * (box % 3);
-		for (int currentRow = rowStart; currentRow < rowStart + 3; currentRow++) {
-			for (int currentCol = colStart; currentCol < colStart + 3; currentCol++) {
-				possibilities.get((9 * currentRow) + currentCol).remove(value);
-			}
+		int start = BOARD.box_start(BOX[position]);
+		for (int index = start; index < start + 9; index++) {
+			possibilities.get(UNITS[index]).remove(value);
 		}
 	}
 
@@ -484,9 +798,9 @@ public class Sudoku {
 	 *            - the value to prune
 	 */
 	protected static void prune_column(ArrayList<HashSet<Integer>> possibilities, int position, Integer value) {
-		int col = position % 9;
-		for (int currentRow = 0; currentRow < 9; currentRow++) {
-			possibilities.get(col + (9 * currentRow)).remove(value);
+		int start = BOARD.column_start(COLUMN[position]);
+		for (int index = start; index < start + 9; index++) {
+			possibilities.get(UNITS[index]).remove(value);
 		}
 	}
 
@@ -502,9 +816,9 @@ public class Sudoku {
 	 *            - the value to prune
 	 */
 	protected static void prune_row(ArrayList<HashSet<Integer>> possibilities, int position, Integer value) {
-		int row = position / 9;
-		for (int currentColumn = 0; currentColumn < 9; currentColumn++) {
-			possibilities.get((row * 9) + currentColumn).remove(value);
+		int start = BOARD.row_start(ROW[position]);
+		for (int index = start; index < start + 9; index++) {
+			possibilities.get(UNITS[index]).remove(value);
 		}
 	}
 
@@ -0,0 +1,222 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encodes a sudoku as a boolean formula in conjunctive normal form, so it can
+ * be handed to CdclSolver or, through write_dimacs(), to any other SAT
+ * solver.
+ *
+ * There is one variable per (cell, digit), true when the cell holds the
+ * digit. The clauses say:
+ *
+ * 1) every cell holds at least one digit and at most one digit
+ *
+ * 2) every row, column and box holds each digit at least once and at most
+ * once
+ *
+ * 3) the givens hold their digit
+ *
+ * Works for any box size, so a 25x25 board is new SudokuCnf(5, values).
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+public class SudokuCnf {
+
+	// Width of a box, and of the board (boxSize squared).
+	private final int boxSize;
+	private final int size;
+	private final int[] givens;
+	private final ArrayList<int[]> clauses = new ArrayList<>();
+
+	/**
+	 * @param boxSize
+	 *            - width of a box, 3 for a normal 9x9 puzzle
+	 * @param values
+	 *            - size * size cell values in row-major order, 0 meaning
+	 *            empty
+	 */
+	public SudokuCnf(int boxSize, int[] values) {
+		if (boxSize < 1 || boxSize > 8) {
+			throw new IllegalArgumentException("Box size " + boxSize);
+		}
+		this.boxSize = boxSize;
+		this.size = boxSize * boxSize;
+		if (values.length != size * size) {
+			throw new IllegalArgumentException("A " + size + "x" + size + " puzzle needs " + (size * size)
+					+ " values, got " + values.length);
+		}
+		for (int cell = 0; cell < values.length; cell++) {
+			if (values[cell] < 0 || values[cell] > size) {
+				throw new IllegalArgumentException("Bad value " + values[cell] + " at " + cell);
+			}
+		}
+		this.givens = values.clone();
+		encode();
+	}
+
+	/**
+	 * @return the encoding of a normal 9x9 puzzle
+	 */
+	public static SudokuCnf encode(Sudoku sudoku) {
+		return new SudokuCnf(3, sudoku.get_values());
+	}
+
+	/**
+	 * @param cell
+	 *            - position in row-major order
+	 * @param digit
+	 *            - 1 to size
+	 * @return the DIMACS variable meaning "cell holds digit"
+	 */
+	public int variable(int cell, int digit) {
+		return cell * size + digit;
+	}
+
+	/**
+	 * @return number of variables, size cubed
+	 */
+	public int get_variable_count() {
+		return size * size * size;
+	}
+
+	/**
+	 * @return the clauses, as arrays of DIMACS literals
+	 */
+	public List<int[]> get_clauses() {
+		return Collections.unmodifiableList(clauses);
+	}
+
+	/**
+	 * @return a solver loaded with this formula
+	 */
+	public CdclSolver to_solver() {
+		CdclSolver solver = new CdclSolver(get_variable_count());
+		for (int index = 0; index < clauses.size(); index++) {
+			solver.add_clause(clauses.get(index));
+		}
+		return solver;
+	}
+
+	/**
+	 * Solve with the embedded CDCL solver.
+	 *
+	 * @param conflictLimit
+	 *            - conflicts allowed before giving up
+	 * @return the solved cell values, or null if there is no solution or the
+	 *         limit was reached
+	 */
+	public int[] solve(long conflictLimit) {
+		SolverEvents.Solve event = new SolverEvents.Solve();
+		event.begin();
+		CdclSolver solver = to_solver();
+		CdclSolver.Result result = solver.solve(conflictLimit);
+		event.end();
+		if (event.shouldCommit()) {
+			event.puzzleHash = SolverEvents.puzzle_hash(givens);
+			event.solver = "sat";
+			for (int cell = 0; cell < givens.length; cell++) {
+				if (givens[cell] != 0) {
+					event.givens++;
+				}
+			}
+			event.guesses = solver.get_decisions();
+			event.solved = result == CdclSolver.Result.SATISFIABLE;
+			event.commit();
+		}
+		if (result == CdclSolver.Result.UNKNOWN) {
+			SolverEvents.budget_overrun(givens, "conflicts", conflictLimit, solver.get_conflicts());
+		}
+		if (result != CdclSolver.Result.SATISFIABLE) {
+			return null;
+		}
+		return decode(solver.get_model());
+	}
+
+	/**
+	 * Turn a satisfying assignment back into cell values.
+	 *
+	 * @param model
+	 *            - variable values, indexed by variable - 1
+	 * @return size * size values in row-major order
+	 */
+	public int[] decode(boolean[] model) {
+		int[] values = new int[size * size];
+		for (int cell = 0; cell < values.length; cell++) {
+			for (int digit = 1; digit <= size; digit++) {
+				if (model[variable(cell, digit) - 1]) {
+					values[cell] = digit;
+					break;
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Write the formula in DIMACS CNF format.
+	 */
+	public void write_dimacs(Writer out) throws IOException {
+		StringBuilder line = new StringBuilder(64);
+		out.write("c sudoku " + size + "x" + size + "\n");
+		out.write("p cnf " + get_variable_count() + " " + clauses.size() + "\n");
+		for (int index = 0; index < clauses.size(); index++) {
+			int[] clause = clauses.get(index);
+			line.setLength(0);
+			for (int literal = 0; literal < clause.length; literal++) {
+				line.append(clause[literal]).append(' ');
+			}
+			line.append("0\n");
+			out.append(line);
+		}
+		out.flush();
+	}
+
+	private void encode() {
+		int[] unit = new int[size];
+		for (int cell = 0; cell < size * size; cell++) {
+			if (givens[cell] != 0) {
+				clauses.add(new int[] { variable(cell, givens[cell]) });
+			}
+		}
+		// Cells: exactly one digit each.
+		for (int cell = 0; cell < size * size; cell++) {
+			int[] atLeastOne = new int[size];
+			for (int digit = 1; digit <= size; digit++) {
+				atLeastOne[digit - 1] = variable(cell, digit);
+			}
+			exactly_one(atLeastOne);
+		}
+		// Rows, columns and boxes: each digit exactly once.
+		int[] units = Topology.of(boxSize).units;
+		for (int start = 0; start < units.length; start += size) {
+			for (int digit = 1; digit <= size; digit++) {
+				for (int offset = 0; offset < size; offset++) {
+					unit[offset] = variable(units[start + offset], digit);
+				}
+				exactly_one(unit.clone());
+			}
+		}
+	}
+
+	/**
+	 * One clause saying at least one variable is true, and a pairwise clause
+	 * for each pair saying they are not both true.
+	 */
+	private void exactly_one(int[] variables) {
+		clauses.add(variables);
+		for (int first = 0; first < variables.length; first++) {
+			for (int second = first + 1; second < variables.length; second++) {
+				clauses.add(new int[] { -variables[first], -variables[second] });
+			}
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package Sudoku;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class SudokuCnfTest {
+
+	/**
+	 * Make sure the SAT backend finds the one solution of a normal puzzle.
+	 */
+	@Test
+	public void test_solve_9x9() throws Exception {
+		Sudoku puzzle = new Sudoku("Sudoku3.txt");
+		int[] solution = SudokuCnf.encode(puzzle).solve(100000);
+		assertNotNull(solution);
+		assertTrue(new Sudoku(solution).verify());
+		// Givens are kept.
+		int[] givens = puzzle.get_values();
+		for (int cell = 0; cell < 81; cell++) {
+			if (givens[cell] != 0) {
+				assertEquals(givens[cell], solution[cell]);
+			}
+		}
+	}
+
+	/**
+	 * Make sure bigger boards work, starting from an empty 16x16 board.
+	 */
+	@Test
+	public void test_solve_16x16() {
+		int[] values = new int[256];
+		values[0] = 16;
+		values[17] = 3;
+		int[] solution = new SudokuCnf(4, values).solve(100000);
+		assertNotNull(solution);
+		assertEquals(16, solution[0]);
+		assertEquals(3, solution[17]);
+		for (int unit = 0; unit < 16; unit++) {
+			int row = 0;
+			int column = 0;
+			int box = 0;
+			for (int offset = 0; offset < 16; offset++) {
+				row |= 1 << solution[unit * 16 + offset];
+				column |= 1 << solution[offset * 16 + unit];
+				box |= 1 << solution[(4 * (unit / 4) + offset / 4) * 16 + 4 * (unit % 4) + offset % 4];
+			}
+			assertEquals(0x1FFFE, row);
+			assertEquals(0x1FFFE, column);
+			assertEquals(0x1FFFE, box);
+		}
+	}
+
+	/**
+	 * Two equal givens in a row have no solution.
+	 */
+	@Test
+	public void test_unsatisfiable() {
+		int[] values = new int[81];
+		values[0] = 5;
+		values[8] = 5;
+		assertNull(new SudokuCnf(3, values).solve(100000));
+
+		// Three pigeons, two holes.
+		CdclSolver solver = new CdclSolver(6);
+		solver.add_clause(1, 2);
+		solver.add_clause(3, 4);
+		solver.add_clause(5, 6);
+		solver.add_clause(-1, -3);
+		solver.add_clause(-1, -5);
+		solver.add_clause(-3, -5);
+		solver.add_clause(-2, -4);
+		solver.add_clause(-2, -6);
+		solver.add_clause(-4, -6);
+		assertEquals(CdclSolver.Result.UNSATISFIABLE, solver.solve(1000));
+	}
+
+	/**
+	 * Make sure the DIMACS header matches the formula.
+	 */
+	@Test
+	public void test_write_dimacs() throws Exception {
+		SudokuCnf cnf = new SudokuCnf(2, new int[16]);
+		StringWriter out = new StringWriter();
+		cnf.write_dimacs(out);
+		String[] lines = out.toString().split("\n");
+		assertEquals("p cnf 64 " + cnf.get_clauses().size(), lines[1]);
+		assertEquals(cnf.get_clauses().size() + 2, lines.length);
+		assertTrue(lines[2].endsWith(" 0"));
+	}
+
+	/**
+	 * With no guesses allowed the router has to fall back to SAT.
+	 */
+	@Test
+	public void test_router() throws Exception {
+		SolverRouter router = new SolverRouter(0, 100000);
+		Sudoku puzzle = new Sudoku("Sudoku3.txt");
+		assertTrue(router.solve(puzzle));
+		assertTrue(puzzle.verify());
+		assertEquals(0, router.get_solved_by_recursion());
+		assertEquals(1, router.get_solved_by_sat());
+
+		router = new SolverRouter();
+		puzzle = new Sudoku("Sudoku1.txt");
+		assertTrue(router.solve(puzzle));
+		assertTrue(puzzle.verify());
+		assertEquals(1, router.get_solved_by_recursion());
+
+		// The budget counts guesses from the start of each solve, not guesses
+		// the puzzle made before.
+		int needed = puzzle.get_guess_count();
+		router = new SolverRouter(needed, 100000);
+		puzzle = new Sudoku("Sudoku1.txt");
+		puzzle.set_guess_limit(10);
+		assertFalse(puzzle.solve_sudoku());
+		puzzle.set_guess_limit(Integer.MAX_VALUE);
+		assertTrue(router.solve(puzzle));
+		assertEquals(1, router.get_solved_by_recursion());
+		assertEquals(0, router.get_solved_by_sat());
+
+		// The router puts back the limit the caller had set.
+		puzzle = new Sudoku("Sudoku2.txt");
+		puzzle.set_guess_limit(10);
+		assertTrue(router.solve(puzzle));
+		assertEquals(10, puzzle.get_guess_limit());
+	}
+}
@@ -0,0 +1,292 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Text encodings of a 9x9 puzzle, for moving puzzles in and out of the
+ * program without Scanner or string concatenation.
+ *
+ * Three formats are written:
+ *
+ * COMPACT - 81 characters, one per cell, 0 for empty
+ *
+ * PRETTY - the boxed grid printed by Sudoku.toString()
+ *
+ * JSON - a flat array of 81 numbers, e.g. [0,0,3,...]
+ *
+ * Every format has a fixed length, so encoding copies a template and drops
+ * the 81 digits into known positions. Decoding is the same for all formats
+ * (and for the puzzle files): each digit is a cell, '.' is an empty cell, and
+ * anything else is skipped.
+ *
+ * Text is ASCII, so byte[] and ByteBuffer hold one byte per character.
+ *
+ * For storage there is also a binary form, pack(), at half a byte per cell.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+public final class SudokuCodec {
+
+	/**
+	 * Bytes used by pack(): two cells per byte.
+	 */
+	public static final int PACKED_LENGTH = 41;
+
+	/**
+	 * Output formats.
+	 */
+	public enum Format {
+		COMPACT, PRETTY, JSON;
+
+		// Text with every digit set to 0, and where the 81 digits go.
+		private final byte[] template;
+		private final int[] positions = new int[81];
+
+		private Format() {
+			StringBuilder text = new StringBuilder(300);
+			for (int cell = 0; cell < 81; cell++) {
+				int row = cell / 9;
+				int column = cell % 9;
+				if (name().equals("PRETTY")) {
+					if (column == 0 && row % 3 == 0) {
+						text.append("---------------------\n");
+					}
+					if (column % 3 == 0) {
+						text.append('|');
+					}
+					positions[cell] = text.length();
+					text.append("0 ");
+					if (column == 8) {
+						text.append("|\n");
+					}
+				} else if (name().equals("JSON")) {
+					text.append(cell == 0 ? '[' : ',');
+					positions[cell] = text.length();
+					text.append('0');
+				} else {
+					positions[cell] = text.length();
+					text.append('0');
+				}
+			}
+			if (name().equals("PRETTY")) {
+				text.append("---------------------\n");
+			} else if (name().equals("JSON")) {
+				text.append(']');
+			}
+			template = new byte[text.length()];
+			for (int index = 0; index < template.length; index++) {
+				template[index] = (byte) text.charAt(index);
+			}
+		}
+
+		/**
+		 * @return characters (and bytes) in an encoded puzzle
+		 */
+		public int length() {
+			return template.length;
+		}
+	}
+
+	private SudokuCodec() {
+	}
+
+	/**
+	 * Encode into a byte array.
+	 *
+	 * @return number of bytes written, format.length()
+	 */
+	public static int encode(int[] values, Format format, byte[] out, int offset) {
+		check_values(values);
+		System.arraycopy(format.template, 0, out, offset, format.template.length);
+		int[] positions = format.positions;
+		for (int cell = 0; cell < 81; cell++) {
+			out[offset + positions[cell]] = (byte) ('0' + values[cell]);
+		}
+		return format.template.length;
+	}
+
+	/**
+	 * Encode into a buffer at its position, advancing the position.
+	 */
+	public static void encode(int[] values, Format format, ByteBuffer out) {
+		if (out.remaining() < format.length()) {
+			throw new IllegalArgumentException("Need " + format.length() + " bytes, have " + out.remaining());
+		}
+		if (out.hasArray()) {
+			int written = encode(values, format, out.array(), out.arrayOffset() + out.position());
+			out.position(out.position() + written);
+			return;
+		}
+		check_values(values);
+		int start = out.position();
+		out.put(format.template);
+		int[] positions = format.positions;
+		for (int cell = 0; cell < 81; cell++) {
+			out.put(start + positions[cell], (byte) ('0' + values[cell]));
+		}
+	}
+
+	/**
+	 * Append to a StringBuilder.
+	 *
+	 * @return the builder
+	 */
+	public static StringBuilder encode(int[] values, Format format, StringBuilder out) {
+		check_values(values);
+		int start = out.length();
+		byte[] template = format.template;
+		out.ensureCapacity(start + template.length);
+		for (int index = 0; index < template.length; index++) {
+			out.append((char) template[index]);
+		}
+		int[] positions = format.positions;
+		for (int cell = 0; cell < 81; cell++) {
+			out.setCharAt(start + positions[cell], (char) ('0' + values[cell]));
+		}
+		return out;
+	}
+
+	/**
+	 * @return the encoded puzzle as a String
+	 */
+	public static String encode(int[] values, Format format) {
+		char[] text = new char[format.length()];
+		byte[] template = format.template;
+		for (int index = 0; index < text.length; index++) {
+			text[index] = (char) template[index];
+		}
+		check_values(values);
+		int[] positions = format.positions;
+		for (int cell = 0; cell < 81; cell++) {
+			text[positions[cell]] = (char) ('0' + values[cell]);
+		}
+		return new String(text);
+	}
+
+	/**
+	 * @param character
+	 *            - a character of input
+	 * @return the cell value it stands for, or -1 if it is not a cell
+	 */
+	public static int cell_value(int character) {
+		if (character >= '0' && character <= '9') {
+			return character - '0';
+		}
+		return character == '.' ? 0 : -1;
+	}
+
+	/**
+	 * Read cells from text in any of the formats.
+	 *
+	 * @param into
+	 *            - where the values go, filled from index 0
+	 * @return number of cells read; less than into.length if the text ran
+	 *         out, -1 if the text holds more cells than fit
+	 */
+	public static int decode(CharSequence text, int[] into) {
+		int count = 0;
+		for (int index = 0; index < text.length(); index++) {
+			int value = cell_value(text.charAt(index));
+			if (value >= 0) {
+				if (count == into.length) {
+					return -1;
+				}
+				into[count++] = value;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Read cells from ASCII bytes. See decode(CharSequence, int[]).
+	 */
+	public static int decode(byte[] bytes, int offset, int length, int[] into) {
+		int count = 0;
+		for (int index = offset; index < offset + length; index++) {
+			int value = cell_value(bytes[index]);
+			if (value >= 0) {
+				if (count == into.length) {
+					return -1;
+				}
+				into[count++] = value;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Read cells from the remaining bytes of a buffer, consuming them. See
+	 * decode(CharSequence, int[]).
+	 */
+	public static int decode(ByteBuffer bytes, int[] into) {
+		if (bytes.hasArray()) {
+			int count = decode(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(), into);
+			bytes.position(bytes.limit());
+			return count;
+		}
+		int count = 0;
+		while (bytes.hasRemaining()) {
+			int value = cell_value(bytes.get());
+			if (value >= 0) {
+				if (count == into.length) {
+					return -1;
+				}
+				into[count++] = value;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return a puzzle read from text in any of the formats
+	 * @throws IllegalArgumentException
+	 *             if the text does not hold exactly 81 cells
+	 */
+	public static Sudoku decode(CharSequence text) {
+		int[] values = new int[81];
+		int count = decode(text, values);
+		if (count != 81) {
+			throw new IllegalArgumentException("Expected 81 cells, got " + (count < 0 ? "more" : count));
+		}
+		return new Sudoku(values);
+	}
+
+	/**
+	 * Pack 81 values into 41 bytes, one 4-bit value per cell, high nibble
+	 * first.
+	 */
+	public static void pack(int[] values, byte[] out, int offset) {
+		check_values(values);
+		for (int cell = 0; cell < 80; cell += 2) {
+			out[offset + (cell >> 1)] = (byte) ((values[cell] << 4) | values[cell + 1]);
+		}
+		out[offset + 40] = (byte) (values[80] << 4);
+	}
+
+	/**
+	 * Reverse of pack().
+	 */
+	public static void unpack(byte[] in, int offset, int[] values) {
+		for (int cell = 0; cell < 80; cell += 2) {
+			int both = in[offset + (cell >> 1)] & 0xFF;
+			values[cell] = both >>> 4;
+			values[cell + 1] = both & 0xF;
+		}
+		values[80] = (in[offset + 40] & 0xFF) >>> 4;
+	}
+
+	private static void check_values(int[] values) {
+		if (values.length != 81) {
+			throw new IllegalArgumentException("A puzzle needs 81 values, got " + values.length);
+		}
+		for (int index = 0; index < 81; index++) {
+			if (values[index] < 0 || values[index] > 9) {
+				throw new IllegalArgumentException("Bad value " + values[index] + " at " + index);
+			}
+		}
+	}
+}
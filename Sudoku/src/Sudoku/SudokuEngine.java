@@ -0,0 +1,33 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+/**
+ * A way of solving a 9x9 puzzle, so different solvers can be swapped or
+ * raced against each other (see SolverPortfolio).
+ *
+ * Engines keep no state between calls, so one instance can solve many
+ * puzzles at once on different threads. A solve should return soon after its
+ * thread is interrupted.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+public interface SudokuEngine {
+
+	/**
+	 * @return a short name for reports
+	 */
+	String name();
+
+	/**
+	 * @param values
+	 *            - 81 cell values in row-major order, 0 meaning empty; not
+	 *            modified
+	 * @return the solved values, or null if there is no solution (or the
+	 *         thread was interrupted). An engine that gives up without an
+	 *         answer throws instead, so null can be trusted.
+	 */
+	int[] solve(int[] values);
+}
@@ -0,0 +1,267 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+/**
+ * Stateful, incremental view of a puzzle for interactive play. Instead of
+ * re-running is_valid or solve_by_elimination after every move, the session
+ * keeps a bitmask of used digits for each row, column and box, so placing or
+ * clearing a value is O(1) and candidates are a few bit operations. The set of
+ * cells with exactly one candidate is kept up to date by revisiting only the
+ * 20 peers of the changed cell, which makes hint() a scan of two words.
+ *
+ * Digits are stored as bits 1-9 of an int mask (bit 0 is unused).
+ *
+ * A session is meant to be owned by one player, so it is not thread safe;
+ * run one session per game instead of sharing one.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+public class SudokuSession {
+
+	// Mask with the bits for digits 1-9 set.
+	private static final int ALL_DIGITS = 0x3FE;
+
+	// Board geometry, see Topology.
+	private static final int[] ROW = Topology.NINE.row;
+	private static final int[] COLUMN = Topology.NINE.column;
+	private static final int[] BOX = Topology.NINE.box;
+	private static final int[] PEERS = Topology.NINE.peers;
+	private static final int PEER_COUNT = Topology.NINE.peerCount;
+
+	// Current values, 0 meaning empty.
+	private final int[] values = new int[81];
+	// Cells that were filled when the session started and cannot change.
+	private final boolean[] given = new boolean[81];
+	// Used digits per row, column and box.
+	private final int[] rowUsed = new int[9];
+	private final int[] columnUsed = new int[9];
+	private final int[] boxUsed = new int[9];
+	// Bitset over the 81 cells of empty cells with exactly one candidate.
+	private final long[] singles = new long[2];
+	// Undo stack; each move packs cell | old value << 8 | new value << 12.
+	private int[] history = new int[64];
+	private int historySize = 0;
+
+	/**
+	 * Start a session from the current state of the given puzzle. Filled cells
+	 * become givens and cannot be cleared.
+	 *
+	 * @param sudoku
+	 *            - the puzzle to play
+	 */
+	public SudokuSession(Sudoku sudoku) {
+		int[] start = sudoku.get_values();
+		for (int cell = 0; cell < 81; cell++) {
+			if (start[cell] != 0) {
+				given[cell] = true;
+				set(cell, start[cell]);
+			}
+		}
+		for (int cell = 0; cell < 81; cell++) {
+			refresh_single(cell);
+		}
+	}
+
+	/**
+	 * Place a digit, replacing whatever the player had in that cell.
+	 *
+	 * @param cell
+	 *            - the position (0-80)
+	 * @param digit
+	 *            - the digit to place (1-9)
+	 * @return false if the digit conflicts with a peer, in which case nothing
+	 *         changes
+	 */
+	public boolean place(int cell, int digit) {
+		check_cell(cell);
+		if (digit < 1 || digit > 9) {
+			throw new IndexOutOfBoundsException("Digit " + digit);
+		}
+		if (given[cell]) {
+			throw new IllegalStateException("Cell " + cell + " is a given");
+		}
+		int old = values[cell];
+		if (old == digit) {
+			return true;
+		}
+		if (old != 0) {
+			unset(cell, old);
+		}
+		if ((used(cell) & (1 << digit)) != 0) {
+			// Put back what was there, the move is rejected.
+			if (old != 0) {
+				set(cell, old);
+			}
+			return false;
+		}
+		set(cell, digit);
+		push(cell, old, digit);
+		refresh_peers(cell);
+		return true;
+	}
+
+	/**
+	 * Empty a cell the player filled.
+	 *
+	 * @param cell
+	 *            - the position (0-80)
+	 * @return false if the cell was already empty
+	 */
+	public boolean clear(int cell) {
+		check_cell(cell);
+		if (given[cell]) {
+			throw new IllegalStateException("Cell " + cell + " is a given");
+		}
+		int old = values[cell];
+		if (old == 0) {
+			return false;
+		}
+		unset(cell, old);
+		push(cell, old, 0);
+		refresh_peers(cell);
+		return true;
+	}
+
+	/**
+	 * Revert the most recent place or clear.
+	 *
+	 * @return false if there was nothing to undo
+	 */
+	public boolean undo() {
+		if (historySize == 0) {
+			return false;
+		}
+		int move = history[--historySize];
+		int cell = move & 0xFF;
+		int old = (move >>> 8) & 0xF;
+		int current = (move >>> 12) & 0xF;
+		if (current != 0) {
+			unset(cell, current);
+		}
+		if (old != 0) {
+			set(cell, old);
+		}
+		refresh_peers(cell);
+		return true;
+	}
+
+	/**
+	 * @param cell
+	 *            - the position (0-80)
+	 * @return mask of digits that can go in the cell (bit d set for digit d),
+	 *         or 0 if the cell is filled
+	 */
+	public int candidates(int cell) {
+		check_cell(cell);
+		if (values[cell] != 0) {
+			return 0;
+		}
+		return ~used(cell) & ALL_DIGITS;
+	}
+
+	/**
+	 * Find an empty cell that has only one possible digit.
+	 *
+	 * @return {cell, digit}, or null if no cell is forced
+	 */
+	public int[] hint() {
+		for (int word = 0; word < 2; word++) {
+			if (singles[word] != 0) {
+				int cell = (word << 6) + Long.numberOfTrailingZeros(singles[word]);
+				return new int[] { cell, Integer.numberOfTrailingZeros(candidates(cell)) };
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param cell
+	 *            - the position (0-80)
+	 * @return the value in the cell, 0 if empty
+	 */
+	public int get(int cell) {
+		check_cell(cell);
+		return values[cell];
+	}
+
+	/**
+	 * @return true once every cell is filled; moves are checked as they are
+	 *         placed, so a full board is a solved board
+	 */
+	public boolean is_solved() {
+		for (int cell = 0; cell < 81; cell++) {
+			if (values[cell] == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return a copy of the current board as a puzzle
+	 */
+	public Sudoku to_sudoku() {
+		return new Sudoku(values);
+	}
+
+	/**
+	 * Digits already used by peers of the cell.
+	 */
+	private int used(int cell) {
+		return rowUsed[ROW[cell]] | columnUsed[COLUMN[cell]] | boxUsed[BOX[cell]];
+	}
+
+	private void set(int cell, int digit) {
+		int bit = 1 << digit;
+		values[cell] = digit;
+		rowUsed[ROW[cell]] |= bit;
+		columnUsed[COLUMN[cell]] |= bit;
+		boxUsed[BOX[cell]] |= bit;
+	}
+
+	private void unset(int cell, int digit) {
+		int bit = ~(1 << digit);
+		values[cell] = 0;
+		rowUsed[ROW[cell]] &= bit;
+		columnUsed[COLUMN[cell]] &= bit;
+		boxUsed[BOX[cell]] &= bit;
+	}
+
+	/**
+	 * Only the changed cell and its peers can gain or lose a candidate.
+	 */
+	private void refresh_peers(int cell) {
+		refresh_single(cell);
+		int start = cell * PEER_COUNT;
+		for (int index = start; index < start + PEER_COUNT; index++) {
+			refresh_single(PEERS[index]);
+		}
+	}
+
+	private void refresh_single(int cell) {
+		long bit = 1L << (cell & 63);
+		if (values[cell] == 0 && Integer.bitCount(~used(cell) & ALL_DIGITS) == 1) {
+			singles[cell >>> 6] |= bit;
+		} else {
+			singles[cell >>> 6] &= ~bit;
+		}
+	}
+
+	private void push(int cell, int old, int digit) {
+		if (historySize == history.length) {
+			int[] bigger = new int[history.length * 2];
+			System.arraycopy(history, 0, bigger, 0, historySize);
+			history = bigger;
+		}
+		history[historySize++] = cell | (old << 8) | (digit << 12);
+	}
+
+	private static void check_cell(int cell) {
+		if (cell < 0 || cell > 80) {
+			throw new IndexOutOfBoundsException("Cell " + cell);
+		}
+	}
+}
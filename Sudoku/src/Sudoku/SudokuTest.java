@@ -6,8 +6,14 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
@@ -326,4 +332,249 @@ public class SudokuTest {
 		puzzle2.solve_by_elimination();
 		assertTrue(puzzle2.verify());
 	}
+
+	/**
+	 * Make sure the incremental session keeps candidates and hints in step
+	 * with placed, cleared and undone moves.
+	 */
+	@Test
+	public void test_session() {
+		SudokuSession session = new SudokuSession(puzzle1);
+		// Row 0 has 3, 2, 6; column 0 has 9, 7, 8; box 0 has 3, 9, 1.
+		assertEquals((1 << 4) | (1 << 5), session.candidates(0));
+		// Conflicting moves are rejected and change nothing.
+		assertFalse(session.place(0, 3));
+		assertEquals(0, session.get(0));
+
+		assertTrue(session.place(0, 4));
+		assertEquals(0, session.candidates(0));
+		// 4 is gone from every peer.
+		assertEquals(0, session.candidates(1) & (1 << 4));
+		assertEquals(0, session.candidates(72) & (1 << 4));
+
+		assertTrue(session.clear(0));
+		assertTrue(session.undo());
+		assertEquals(4, session.get(0));
+		assertTrue(session.undo());
+		assertEquals(0, session.get(0));
+		assertFalse(session.undo());
+
+		// Following the hints all the way should solve an easy puzzle.
+		int[] hint = session.hint();
+		while (hint != null) {
+			assertTrue(session.place(hint[0], hint[1]));
+			hint = session.hint();
+		}
+		assertTrue(session.is_solved());
+		assertTrue(session.to_sudoku().verify());
+	}
+
+	/**
+	 * Make sure the nogood solver solves correctly, with a roomy table and
+	 * with one so small that almost every store evicts.
+	 */
+	@Test
+	public void test_solve_with_nogoods() throws Exception {
+		Sudoku learning = new Sudoku("Sudoku3.txt");
+		assertTrue(learning.solve_sudoku_with_nogoods(1 << 12));
+		assertTrue(is_solution(learning.get_values()));
+		assertTrue(learning.get_nogoods().get_stores() > 0);
+
+		Sudoku small = new Sudoku("Sudoku3.txt");
+		assertTrue(small.solve_sudoku_with_nogoods(1));
+		assertArrayEquals(learning.get_values(), small.get_values());
+	}
+
+	/**
+	 * Make sure an interrupted solve gives up, and that the same puzzle can
+	 * be solved once the interrupt is cleared.
+	 */
+	@Test
+	public void test_interrupted_solve() throws Exception {
+		Sudoku hard = new Sudoku("Sudoku3.txt");
+		Thread.currentThread().interrupt();
+		try {
+			assertFalse(hard.solve_sudoku());
+			assertTrue(hard.is_over_budget());
+		} finally {
+			Thread.interrupted();
+		}
+		assertTrue(hard.solve_sudoku());
+		assertFalse(hard.is_over_budget());
+	}
+
+	/**
+	 * Check every row, column and box holds each digit exactly once.
+	 */
+	private static boolean is_solution(int[] values) {
+		for (int unit = 0; unit < 9; unit++) {
+			int row = 0;
+			int column = 0;
+			int box = 0;
+			for (int offset = 0; offset < 9; offset++) {
+				row |= 1 << values[unit * 9 + offset];
+				column |= 1 << values[offset * 9 + unit];
+				box |= 1 << values[(3 * (unit / 3) + offset / 3) * 9 + 3 * (unit % 3) + offset % 3];
+			}
+			if (row != 0x3FE || column != 0x3FE || box != 0x3FE) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Make sure the solutions stream finds a unique solution once, and that
+	 * sequential and parallel enumeration of an open puzzle agree.
+	 */
+	@Test
+	public void test_solutions() throws Exception {
+		Sudoku unique = new Sudoku("Sudoku1.txt");
+		int[] givens = unique.get_values();
+		List<int[]> found = unique.solutions().collect(Collectors.toList());
+		assertEquals(1, found.size());
+		assertArrayEquals(givens, unique.get_values());
+		unique.solve_sudoku();
+		assertArrayEquals(unique.get_values(), found.get(0));
+
+		// Empty the top three rows of the solution: many ways to refill them.
+		int[] open = unique.get_values();
+		for (int cell = 0; cell < 27; cell++) {
+			open[cell] = 0;
+		}
+		Sudoku sparse = new Sudoku(open);
+		Set<String> sequential = new HashSet<>();
+		sparse.solutions().forEach(solution -> {
+			assertTrue(is_solution(solution));
+			for (int cell = 27; cell < 81; cell++) {
+				assertEquals(open[cell], solution[cell]);
+			}
+			assertTrue(sequential.add(Arrays.toString(solution)));
+		});
+		assertTrue(sequential.size() > 1);
+		Set<String> parallel = sparse.solutions().parallel().map(Arrays::toString)
+				.collect(Collectors.toSet());
+		assertEquals(sequential, parallel);
+		assertEquals(sequential.size(), sparse.solutions().parallel().count());
+
+		// Clashing givens have no solutions.
+		open[0] = open[27];
+		assertEquals(0, new Sudoku(open).solutions().count());
+	}
+
+	/**
+	 * Split a spliterator until it will not split any more or there are
+	 * enough pieces.
+	 */
+	private static void split(Spliterator<int[]> whole, List<Spliterator<int[]>> pieces, int most) {
+		Spliterator<int[]> half = pieces.size() < most ? whole.trySplit() : null;
+		if (half == null) {
+			pieces.add(whole);
+			return;
+		}
+		split(half, pieces, most);
+		split(whole, pieces, most);
+	}
+
+	/**
+	 * Make sure solutions() really splits, also when the first cells it picks
+	 * have only one candidate, and that the pieces share out the solutions.
+	 */
+	@Test
+	public void test_solutions_split() throws Exception {
+		Sudoku unique = new Sudoku("Sudoku1.txt");
+		unique.solve_sudoku();
+		// The last cell can only be refilled one way, and is picked first.
+		int[] open = unique.get_values();
+		for (int cell = 0; cell < 36; cell++) {
+			open[cell] = 0;
+		}
+		open[80] = 0;
+		assertNotNull(new SolutionSpliterator(open).trySplit());
+
+		List<Spliterator<int[]>> pieces = new ArrayList<>();
+		split(new SolutionSpliterator(open), pieces, 16);
+		assertTrue(pieces.size() >= 16);
+		Set<String> shared = new HashSet<>();
+		int found = 0;
+		for (Spliterator<int[]> piece : pieces) {
+			List<int[]> solutions = new ArrayList<>();
+			piece.forEachRemaining(solutions::add);
+			for (int[] solution : solutions) {
+				assertTrue(is_solution(solution));
+				shared.add(Arrays.toString(solution));
+				found++;
+			}
+		}
+		assertEquals(found, shared.size());
+		assertEquals(new Sudoku(open).solutions().count(), found);
+
+		// A solved grid has nothing to split.
+		assertNull(new SolutionSpliterator(unique.get_values()).trySplit());
+	}
+
+	/**
+	 * Make sure every codec format reads back what it wrote, and that the
+	 * pretty format is still the toString() grid.
+	 */
+	@Test
+	public void test_codec() throws Exception {
+		int[] values = puzzle1.get_values();
+		String pretty = puzzle1.toString();
+		assertTrue(pretty.startsWith("---------------------\n|0 0 3 |0 2 0 |6 0 0 |\n|9 0 0 |3 0 5 |0 0 1 |\n"));
+		assertEquals(SudokuCodec.Format.PRETTY.length(), pretty.length());
+
+		for (SudokuCodec.Format format : SudokuCodec.Format.values()) {
+			String text = SudokuCodec.encode(values, format);
+			assertEquals(format.length(), text.length());
+			assertArrayEquals(values, SudokuCodec.decode(text).get_values());
+			assertEquals(text, SudokuCodec.encode(values, format, new StringBuilder()).toString());
+
+			byte[] bytes = new byte[format.length() + 2];
+			assertEquals(format.length(), SudokuCodec.encode(values, format, bytes, 1));
+			int[] into = new int[81];
+			assertEquals(81, SudokuCodec.decode(bytes, 1, format.length(), into));
+			assertArrayEquals(values, into);
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(format.length());
+			SudokuCodec.encode(values, format, buffer);
+			buffer.flip();
+			into = new int[81];
+			assertEquals(81, SudokuCodec.decode(buffer, into));
+			assertArrayEquals(values, into);
+		}
+		assertEquals("[0,0,3,0,2,", SudokuCodec.encode(values, SudokuCodec.Format.JSON).substring(0, 11));
+
+		// '.' is an empty cell, and extra cells are rejected.
+		int[] into = new int[81];
+		assertEquals(2, SudokuCodec.decode(".5", into));
+		assertEquals(5, into[1]);
+		assertEquals(-1, SudokuCodec.decode("12", new int[1]));
+
+		// Values that are not cells are refused rather than written.
+		int[] bad = puzzle1.get_values();
+		bad[40] = 10;
+		try {
+			SudokuCodec.encode(bad, SudokuCodec.Format.COMPACT);
+			fail("encoded 10");
+		} catch (IllegalArgumentException e) {
+		}
+		bad[40] = 16;
+		try {
+			SudokuCodec.pack(bad, new byte[SudokuCodec.PACKED_LENGTH], 0);
+			fail("packed 16");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * Make sure the reader constructor reads the same puzzle as the file one.
+	 */
+	@Test
+	public void test_reader_constructor() throws Exception {
+		BufferedReader reader = new BufferedReader(new FileReader(new File("src/puzzles/Sudoku1.txt")));
+		Sudoku fromReader = new Sudoku(reader);
+		reader.close();
+		assertArrayEquals(puzzle1.get_values(), fromReader.get_values());
+	}
 }
@@ -0,0 +1,123 @@
+/**
+ * Mark Van der Merwe and Tarun Sunkaraneni
+ */
+package Sudoku;
+
+/**
+ * The geometry of a board, worked out once so that solvers look it up
+ * instead of dividing and taking remainders in their inner loops.
+ *
+ * Cells are numbered in row-major order. Units are numbered rows first, then
+ * columns, then boxes, so a board of size n has units 0..n-1 (rows), n..2n-1
+ * (columns) and 2n..3n-1 (boxes), with boxes numbered left to right, top to
+ * bottom.
+ *
+ * All tables are flat int arrays:
+ *
+ * row, column, box - for each cell, its row, column and box number (0..n-1)
+ *
+ * units - the n cells of unit u, in order, at units[u * n] to
+ * units[u * n + n - 1]
+ *
+ * peers - the peerCount other cells sharing a unit with cell c, at
+ * peers[c * peerCount] onwards (20 for a 9x9 board)
+ *
+ * The arrays are shared, so they must never be written to. One instance per
+ * box size is made on first use; NINE is the standard 9x9 board.
+ *
+ * @author markvandermerwe and tarunsunkaraneni
+ *
+ */
+final class Topology {
+
+	// One board per box size, made on first use.
+	private static final Topology[] BOARDS = new Topology[9];
+
+	/**
+	 * The standard 9x9 board.
+	 */
+	static final Topology NINE = of(3);
+
+	// Width of a box, of the board (boxSize squared), and cells on the board.
+	final int boxSize;
+	final int size;
+	final int cellCount;
+	// Other cells sharing a unit with each cell.
+	final int peerCount;
+
+	final int[] row;
+	final int[] column;
+	final int[] box;
+	final int[] units;
+	final int[] peers;
+
+	/**
+	 * @param boxSize
+	 *            - width of a box, 1 to 8
+	 * @return the board made of boxSize by boxSize boxes
+	 */
+	static synchronized Topology of(int boxSize) {
+		if (boxSize < 1 || boxSize >= BOARDS.length) {
+			throw new IllegalArgumentException("Box size " + boxSize);
+		}
+		if (BOARDS[boxSize] == null) {
+			BOARDS[boxSize] = new Topology(boxSize);
+		}
+		return BOARDS[boxSize];
+	}
+
+	private Topology(int boxSize) {
+		this.boxSize = boxSize;
+		this.size = boxSize * boxSize;
+		this.cellCount = size * size;
+		// Row and column less the cell itself, plus the rest of the box.
+		this.peerCount = 2 * (size - 1) + (boxSize - 1) * (boxSize - 1);
+
+		row = new int[cellCount];
+		column = new int[cellCount];
+		box = new int[cellCount];
+		units = new int[3 * size * size];
+		int[] filled = new int[3 * size];
+		for (int cell = 0; cell < cellCount; cell++) {
+			row[cell] = cell / size;
+			column[cell] = cell % size;
+			box[cell] = boxSize * (row[cell] / boxSize) + column[cell] / boxSize;
+			int[] memberOf = { row[cell], size + column[cell], 2 * size + box[cell] };
+			for (int unit : memberOf) {
+				units[unit * size + filled[unit]++] = cell;
+			}
+		}
+
+		peers = new int[cellCount * peerCount];
+		for (int cell = 0; cell < cellCount; cell++) {
+			int count = 0;
+			for (int other = 0; other < cellCount; other++) {
+				if (other != cell && (row[other] == row[cell] || column[other] == column[cell]
+						|| box[other] == box[cell])) {
+					peers[cell * peerCount + count++] = other;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return index into units where the cells of row r start
+	 */
+	int row_start(int r) {
+		return r * size;
+	}
+
+	/**
+	 * @return index into units where the cells of column c start
+	 */
+	int column_start(int c) {
+		return (size + c) * size;
+	}
+
+	/**
+	 * @return index into units where the cells of box b start
+	 */
+	int box_start(int b) {
+		return (2 * size + b) * size;
+	}
+}